@@ -0,0 +1,45 @@
+package libs;
+
+import java.util.Collection;
+
+/**
+ * Broadphase collision interface. A broadphase keeps the bounds of the game's
+ * sprites in a structure that finds the pairs of sprites that may collide
+ * without testing every sprite against every other one. The pairs it reports
+ * have overlapping bounds and collision filters that match, whether the
+ * sprites really collide is up to the sprites. The bounds of a swept collider
+ * are the box it covered during its last move.
+ * 
+ * Pairs are reported in an order that only depends on the order of the
+ * sprites passed to update, so collisions play out the same way when a game is
+ * replayed.
+ * 
+ * @author williamhooper
+ */
+
+public interface Broadphase
+{
+    /**
+     * Report every pair of the sprites from the last update whose bounds
+     * overlap to the listener, each unordered pair once
+     * 
+     * @param listener
+     */
+    public abstract void findPairs( CollisionPairListener listener );
+
+    /**
+     * Return the number of pairs reported by the last call to
+     * findPairs
+     * 
+     * @return int
+     */
+    public abstract int getPairCount();
+
+    /**
+     * Take the bounds of the sprites for this tick. Sprites without bounds are
+     * left out.
+     * 
+     * @param sprites
+     */
+    public abstract void update( Collection< ? extends Sprite > sprites );
+}
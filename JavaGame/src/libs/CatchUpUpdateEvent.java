@@ -0,0 +1,29 @@
+package libs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a simulation tick that was run without a
+ * rendered frame, because the game engine was catching up on late updates
+ * 
+ * @author williamhooper
+ */
+@Name( "libs.CatchUpUpdate" )
+@Label( "Catch Up Update" )
+@Category( { "Game Engine" } )
+@Description( "Simulation tick run without rendering to catch up on late updates" )
+@StackTrace( false )
+public class CatchUpUpdateEvent extends Event
+{
+    @Label( "Tick" )
+    long tick;
+
+    @Label( "Skip" )
+    @Description( "Number of this catch-up update within the frame, starting at 1" )
+    int skip;
+}
@@ -0,0 +1,188 @@
+package libs;
+
+/**
+ * Collider shape of a sprite: a circle, an axis aligned box or an oriented
+ * box, all given by their center. A sprite keeps one shape and moves it along
+ * in its update method, so a shape is set with the set methods instead of
+ * being made anew every tick.
+ * 
+ * @author williamhooper
+ */
+public class ColliderShape
+{
+    /**
+     * Kinds of collider shapes
+     */
+    public enum ShapeType
+    {
+        Box, Circle, OrientedBox
+    };
+
+    private double centerX;
+    private double centerY;
+    private double cos = 1.0;
+    private double halfHeight;
+    private double halfWidth;
+    private double radius;
+    private double sin = 0.0;
+    private ShapeType type = ShapeType.Box;
+
+    /**
+     * Constructor, an empty box at 0,0
+     */
+    public ColliderShape( )
+    {}
+
+    /**
+     * Return the x coordinate of the center
+     * 
+     * @return double
+     */
+    public double getCenterX()
+    {
+        return centerX;
+    }
+
+    /**
+     * Return the y coordinate of the center
+     * 
+     * @return double
+     */
+    public double getCenterY()
+    {
+        return centerY;
+    }
+
+    /**
+     * Return the cosine of the angle of a box
+     * 
+     * @return double
+     */
+    public double getCos()
+    {
+        return cos;
+    }
+
+    /**
+     * Return half the height of a box
+     * 
+     * @return double
+     */
+    public double getHalfHeight()
+    {
+        return halfHeight;
+    }
+
+    /**
+     * Return half the width of a box
+     * 
+     * @return double
+     */
+    public double getHalfWidth()
+    {
+        return halfWidth;
+    }
+
+    /**
+     * Return the radius of a circle
+     * 
+     * @return double
+     */
+    public double getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * Return the sine of the angle of a box
+     * 
+     * @return double
+     */
+    public double getSin()
+    {
+        return sin;
+    }
+
+    /**
+     * Return the kind of shape
+     * 
+     * @return ShapeType
+     */
+    public ShapeType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Make the shape an axis aligned box
+     * 
+     * @param centerX
+     * @param centerY
+     * @param halfWidth
+     * @param halfHeight
+     */
+    public void setBox( double centerX, double centerY, double halfWidth, double halfHeight )
+    {
+        if ( halfWidth < 0 || halfHeight < 0 )
+        {
+            throw new IllegalArgumentException( "Box size must not be negative" );
+        }
+        type = ShapeType.Box;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+        radius = 0.0;
+        cos = 1.0;
+        sin = 0.0;
+    }
+
+    /**
+     * Make the shape a circle
+     * 
+     * @param centerX
+     * @param centerY
+     * @param radius
+     */
+    public void setCircle( double centerX, double centerY, double radius )
+    {
+        if ( radius < 0 )
+        {
+            throw new IllegalArgumentException( "Radius must not be negative" );
+        }
+        type = ShapeType.Circle;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.radius = radius;
+        halfWidth = 0.0;
+        halfHeight = 0.0;
+        cos = 1.0;
+        sin = 0.0;
+    }
+
+    /**
+     * Make the shape a box turned around its center
+     * 
+     * @param centerX
+     * @param centerY
+     * @param halfWidth
+     * @param halfHeight
+     * @param angle
+     *            in radians, clockwise on the display
+     */
+    public void setOrientedBox( double centerX, double centerY, double halfWidth, double halfHeight, double angle )
+    {
+        if ( halfWidth < 0 || halfHeight < 0 )
+        {
+            throw new IllegalArgumentException( "Box size must not be negative" );
+        }
+        type = ShapeType.OrientedBox;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+        radius = 0.0;
+        cos = Math.cos( angle );
+        sin = Math.sin( angle );
+    }
+}
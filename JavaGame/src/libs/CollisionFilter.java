@@ -0,0 +1,37 @@
+package libs;
+
+/**
+ * Collision filter for sprites. A sprite that implements this interface
+ * belongs to the collision categories set in its category bits and collides
+ * with the categories set in its mask bits. Two sprites are only checked for
+ * a collision when each one's category is in the other's mask, so the
+ * broadphase skips the pairs that never interact before it looks at their
+ * bounds. A sprite with no category or no mask bits is left out of collisions
+ * altogether.
+ * 
+ * Sprites that do not implement this interface collide with everything.
+ * 
+ * @author williamhooper
+ */
+
+public interface CollisionFilter
+{
+    /**
+     * Category and mask bits of sprites that collide with everything
+     */
+    public static final int ALL_CATEGORIES = 0xFFFFFFFF;
+
+    /**
+     * Return the collision categories this sprite belongs to
+     * 
+     * @return int
+     */
+    public int getCollisionCategory();
+
+    /**
+     * Return the collision categories this sprite collides with
+     * 
+     * @return int
+     */
+    public int getCollisionMask();
+}
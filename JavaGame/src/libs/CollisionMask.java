@@ -0,0 +1,256 @@
+package libs;
+
+import java.awt.Rectangle;
+
+/**
+ * Pixel collision mask. One bit per pixel tells whether the pixel is solid,
+ * packed 64 pixels to a long so masks are compared 64 pixels at a time. Each
+ * row starts on a new long and the bits past the right edge are clear.
+ * 
+ * The intersects methods first compare the bounding boxes and only look at
+ * the bits of the rows and columns where the boxes overlap.
+ * 
+ * @author williamhooper
+ */
+public class CollisionMask
+{
+    /**
+     * Alpha value from which a pixel counts as solid
+     */
+    public static final int DEFAULT_ALPHA_THRESHOLD = 128;
+
+    private final long [ ] bits;
+    private final int height;
+    private final double radius;
+    private final int width;
+    private final int wordsPerRow;
+
+    /**
+     * Constructor, create a mask from ARGB pixels
+     * 
+     * @param argb
+     *            pixels, row by row
+     * @param offset
+     *            index of the first pixel
+     * @param scanSize
+     *            number of pixels from one row to the next
+     * @param width
+     * @param height
+     * @param alphaThreshold
+     *            alpha value from which a pixel counts as solid
+     */
+    public CollisionMask( int [ ] argb, int offset, int scanSize, int width, int height, int alphaThreshold )
+    {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = ( width + 63 ) >> 6;
+        bits = new long [ wordsPerRow * height ];
+
+        double farthest = 0.0;
+        for ( int y = 0; y < height; y++ )
+        {
+            int pixel = offset + y * scanSize;
+            int word = y * wordsPerRow;
+            double deltaY = Math.max( Math.abs( y - height / 2.0 ), Math.abs( y + 1 - height / 2.0 ) );
+            for ( int x = 0; x < width; x++ )
+            {
+                if ( ( argb[ pixel + x ] >>> 24 ) >= alphaThreshold )
+                {
+                    bits[ word + ( x >> 6 ) ] |= 1L << ( x & 63 );
+
+                    /**
+                     * Keep the distance to the farthest corner of a solid
+                     * pixel
+                     */
+                    double deltaX = Math.max( Math.abs( x - width / 2.0 ), Math.abs( x + 1 - width / 2.0 ) );
+                    farthest = Math.max( farthest, deltaX * deltaX + deltaY * deltaY );
+                }
+            }
+        }
+        radius = Math.sqrt( farthest );
+    }
+
+    /**
+     * Return the height of the mask
+     * 
+     * @return int
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Return the radius of the smallest circle around the center of the mask
+     * that holds all its solid pixels
+     * 
+     * @return double
+     */
+    public double getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * Return the width of the mask
+     * 
+     * @return int
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Return true if the pixel is solid. Pixels outside the mask are not.
+     * 
+     * @param x
+     * @param y
+     * @return boolean
+     */
+    public boolean isSolid( int x, int y )
+    {
+        if ( x < 0 || y < 0 || x >= width || y >= height )
+        {
+            return false;
+        }
+        return ( bits[ y * wordsPerRow + ( x >> 6 ) ] & ( 1L << ( x & 63 ) ) ) != 0;
+    }
+
+    /**
+     * Return true if this mask at x,y has a solid pixel where the other mask
+     * at otherX,otherY has one
+     * 
+     * @param x
+     * @param y
+     * @param other
+     * @param otherX
+     * @param otherY
+     * @return boolean
+     */
+    public boolean intersects( int x, int y, CollisionMask other, int otherX, int otherY )
+    {
+        int left = Math.max( x, otherX );
+        int top = Math.max( y, otherY );
+        int right = Math.min( x + width, otherX + other.width );
+        int bottom = Math.min( y + height, otherY + other.height );
+        if ( left >= right || top >= bottom )
+        {
+            return false;
+        }
+
+        int overlapWidth = right - left;
+        for ( int row = top; row < bottom; row++ )
+        {
+            int rowStart = ( row - y ) * wordsPerRow;
+            int otherRowStart = ( row - otherY ) * other.wordsPerRow;
+            for ( int column = 0; column < overlapWidth; column += 64 )
+            {
+                long solid = bitsAt( rowStart, left - x + column ) & other.bitsAt( otherRowStart, left - otherX + column );
+                if ( ( solid & columnMask( overlapWidth - column ) ) != 0 )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if this mask at x,y has a solid pixel inside the rectangle
+     * 
+     * @param x
+     * @param y
+     * @param rect
+     * @return boolean
+     */
+    public boolean intersects( int x, int y, Rectangle rect )
+    {
+        return intersects( x, y, rect.x, rect.y, rect.width, rect.height );
+    }
+
+    /**
+     * Return true if this mask at x,y has a solid pixel inside the rectangle
+     * at rectX,rectY
+     * 
+     * @param x
+     * @param y
+     * @param rectX
+     * @param rectY
+     * @param rectWidth
+     * @param rectHeight
+     * @return boolean
+     */
+    public boolean intersects( int x, int y, int rectX, int rectY, int rectWidth, int rectHeight )
+    {
+        int left = Math.max( x, rectX );
+        int top = Math.max( y, rectY );
+        int right = Math.min( x + width, rectX + rectWidth );
+        int bottom = Math.min( y + height, rectY + rectHeight );
+        if ( left >= right || top >= bottom )
+        {
+            return false;
+        }
+
+        int overlapWidth = right - left;
+        for ( int row = top; row < bottom; row++ )
+        {
+            int rowStart = ( row - y ) * wordsPerRow;
+            for ( int column = 0; column < overlapWidth; column += 64 )
+            {
+                if ( ( bitsAt( rowStart, left - x + column ) & columnMask( overlapWidth - column ) ) != 0 )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the bits of 64 pixels of a row, starting at column x. The bits
+     * of pixels outside the row are clear.
+     * 
+     * @param rowStart
+     * @param x
+     * @return long
+     */
+    private long bitsAt( int rowStart, int x )
+    {
+        int word = x >> 6;
+        int shift = x & 63;
+        long low = wordAt( rowStart, word ) >>> shift;
+        if ( shift == 0 )
+        {
+            return low;
+        }
+        return low | ( wordAt( rowStart, word + 1 ) << ( 64 - shift ) );
+    }
+
+    /**
+     * Return the mask of the first columns of a 64 pixel word
+     * 
+     * @param columns
+     * @return long
+     */
+    private static long columnMask( int columns )
+    {
+        return ( columns >= 64 ) ? -1L : ( 1L << columns ) - 1;
+    }
+
+    /**
+     * Return a word of a row, 0 outside the row
+     * 
+     * @param rowStart
+     * @param word
+     * @return long
+     */
+    private long wordAt( int rowStart, int word )
+    {
+        if ( word < 0 || word >= wordsPerRow )
+        {
+            return 0L;
+        }
+        return bits[ rowStart + word ];
+    }
+}
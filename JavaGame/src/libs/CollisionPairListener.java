@@ -0,0 +1,19 @@
+package libs;
+
+/**
+ * Collision pair listener. A broadphase reports the pairs of sprites whose
+ * bounds overlap to this listener, each unordered pair once.
+ * 
+ * @author williamhooper
+ */
+
+public interface CollisionPairListener
+{
+    /**
+     * Receive a pair of sprites whose bounds overlap
+     * 
+     * @param first
+     * @param second
+     */
+    public void collisionPair( Sprite first, Sprite second );
+}
@@ -0,0 +1,369 @@
+package libs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Collision pass. Runs a broadphase over the sprites and visits every pair of
+ * sprites whose bounds overlap once. Both sprites of the pair are then told
+ * about the contact, a sprite that is a contact listener through its contact
+ * method and any other sprite through checkCollision.
+ * 
+ * The bounds are compared by the broadphase with plain integer tests on the
+ * bounds it took at the start of the pass, so a pass calls getBounds once per
+ * sprite and makes no rectangles of its own.
+ * 
+ * A pass works in two steps. First every pair is tested, the swept bounds of
+ * swept colliders, the collider shapes of shaped colliders and the contact
+ * tests of sprites that have one. These tests change nothing, so a parallel
+ * pass splits them over a fork join pool when there are many pairs. Then the
+ * sprites of the pairs that passed are told about their contacts one pair
+ * after the other, in the order the broadphase found them, so the game events
+ * they dispatch come in the same order however the tests were run.
+ * 
+ * @author williamhooper
+ */
+public class CollisionPass
+{
+    /**
+     * Task that tests a range of pairs, splitting it while it is large
+     * 
+     * @author williamhooper
+     * 
+     */
+    private final class PairTestTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor
+         * 
+         * @param from
+         * @param to
+         */
+        private PairTestTask( int from, int to )
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from <= PARALLEL_BATCH_SIZE )
+            {
+                testPairs( from, to );
+                return;
+            }
+
+            int middle = ( from + to ) >>> 1;
+            invokeAll( new PairTestTask( from, middle ), new PairTestTask( middle, to ) );
+        }
+    }
+
+    /**
+     * Test results of a pair: the bounds touched, and the first or second
+     * sprite wants to be told about it
+     */
+    private static final byte TOUCHING = 1;
+    private static final byte NOTIFY_FIRST = 2;
+    private static final byte NOTIFY_SECOND = 4;
+
+    /**
+     * Number of pairs room is made for at first
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Fewest pairs a parallel pass splits over the pool, and the number of
+     * pairs each task tests
+     */
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int PARALLEL_BATCH_SIZE = 128;
+
+    private final Broadphase broadphase;
+    private final Contact contact = new Contact();
+    private int contactCount;
+    private boolean continuous = false;
+    private int pairCount;
+    private Sprite [ ] pairFirst = new Sprite [ INITIAL_CAPACITY ];
+    private double [ ] pairImpact = new double [ INITIAL_CAPACITY ];
+    private byte [ ] pairResult = new byte [ INITIAL_CAPACITY ];
+    private Sprite [ ] pairSecond = new Sprite [ INITIAL_CAPACITY ];
+    private ForkJoinPool pool;
+
+    /**
+     * Pair listener that keeps the pairs for testing
+     */
+    private final CollisionPairListener pairListener = new CollisionPairListener()
+    {
+        @Override
+        public void collisionPair( Sprite first, Sprite second )
+        {
+            if ( pairCount == pairFirst.length )
+            {
+                int capacity = pairCount * 2;
+                pairFirst = Arrays.copyOf( pairFirst, capacity );
+                pairSecond = Arrays.copyOf( pairSecond, capacity );
+                pairImpact = Arrays.copyOf( pairImpact, capacity );
+                pairResult = Arrays.copyOf( pairResult, capacity );
+            }
+            pairFirst[ pairCount ] = first;
+            pairSecond[ pairCount ] = second;
+            pairCount++;
+        }
+    };
+
+    /**
+     * Constructor
+     * 
+     * @param broadphase
+     */
+    public CollisionPass( Broadphase broadphase )
+    {
+        if ( broadphase == null )
+        {
+            throw new IllegalArgumentException( "Broadphase must not be null" );
+        }
+        this.broadphase = broadphase;
+    }
+
+    /**
+     * Return the broadphase of the pass
+     * 
+     * @return Broadphase
+     */
+    public Broadphase getBroadphase()
+    {
+        return broadphase;
+    }
+
+    /**
+     * Return the number of contacts found by the last pass
+     * 
+     * @return int
+     */
+    public int getContactCount()
+    {
+        return contactCount;
+    }
+
+    /**
+     * Return true if the pass checks swept colliders along their whole move
+     * 
+     * @return boolean
+     */
+    public boolean isContinuous()
+    {
+        return continuous;
+    }
+
+    /**
+     * Return true if the pass tests large numbers of pairs in parallel
+     * 
+     * @return boolean
+     */
+    public boolean isParallel()
+    {
+        return pool != null;
+    }
+
+    /**
+     * Find the contacts between the sprites and tell both sprites of every
+     * contact about it
+     * 
+     * @param sprites
+     */
+    public void run( Collection< ? extends Sprite > sprites )
+    {
+        contactCount = 0;
+        pairCount = 0;
+        broadphase.update( sprites );
+        broadphase.findPairs( pairListener );
+
+        if ( pool != null && pairCount >= PARALLEL_THRESHOLD )
+        {
+            pool.invoke( new PairTestTask( 0, pairCount ) );
+        }
+        else
+        {
+            testPairs( 0, pairCount );
+        }
+
+        for ( int pair = 0; pair < pairCount; pair++ )
+        {
+            notifyPair( pair );
+        }
+
+        /**
+         * Let go of the sprites until the next pass
+         */
+        Arrays.fill( pairFirst, 0, pairCount, null );
+        Arrays.fill( pairSecond, 0, pairCount, null );
+    }
+
+    /**
+     * Set whether the pass checks swept colliders along their whole move and
+     * reports the time of impact, so a fast sprite cannot pass through a
+     * small one between two ticks. Otherwise swept colliders are only checked
+     * where they ended up.
+     * 
+     * @param continuous
+     */
+    public void setContinuous( boolean continuous )
+    {
+        this.continuous = continuous;
+    }
+
+    /**
+     * Set whether the pass tests large numbers of pairs in parallel on the
+     * common fork join pool
+     * 
+     * @param parallel
+     */
+    public void setParallel( boolean parallel )
+    {
+        setParallel( parallel ? ForkJoinPool.commonPool() : null );
+    }
+
+    /**
+     * Set the fork join pool the pass tests large numbers of pairs on, null to
+     * test them on the calling thread
+     * 
+     * @param pool
+     */
+    public void setParallel( ForkJoinPool pool )
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Tell a sprite about its contact with another sprite
+     * 
+     * @param sprite
+     * @param other
+     */
+    private void notifyContact( Sprite sprite, Sprite other )
+    {
+        if ( sprite instanceof ContactListener )
+        {
+            ( ( ContactListener ) sprite ).contact( contact );
+        }
+        else
+        {
+            sprite.checkCollision( other );
+        }
+    }
+
+    /**
+     * Tell the sprites of a tested pair about their contact
+     * 
+     * @param pair
+     */
+    private void notifyPair( int pair )
+    {
+        byte result = pairResult[ pair ];
+        if ( ( result & TOUCHING ) == 0 )
+        {
+            return;
+        }
+
+        Sprite first = pairFirst[ pair ];
+        Sprite second = pairSecond[ pair ];
+        contactCount++;
+        contact.set( first, second, pairImpact[ pair ] );
+        if ( ( result & NOTIFY_FIRST ) != 0 )
+        {
+            notifyContact( first, second );
+        }
+        if ( ( result & NOTIFY_SECOND ) != 0 )
+        {
+            notifyContact( second, first );
+        }
+    }
+
+    /**
+     * Return true if a sprite wants to be told about its contact with another
+     * sprite
+     * 
+     * @param sprite
+     * @param other
+     * @param timeOfImpact
+     * @return boolean
+     */
+    private static boolean testContact( Sprite sprite, Sprite other, double timeOfImpact )
+    {
+        return !( sprite instanceof ContactTest ) || ( ( ContactTest ) sprite ).testContact( other, timeOfImpact );
+    }
+
+    /**
+     * Test a range of pairs. Only reads the sprites and writes the results of
+     * its own pairs, so ranges can be tested on different threads.
+     * 
+     * @param from
+     * @param to
+     */
+    private void testPairs( int from, int to )
+    {
+        for ( int pair = from; pair < to; pair++ )
+        {
+            Sprite first = pairFirst[ pair ];
+            Sprite second = pairSecond[ pair ];
+            double timeOfImpact = 1.0;
+
+            /**
+             * The broadphase matched the box a swept collider covered, check
+             * whether the pair really touched along the move, or at the end
+             * of it when the pass is not continuous. The collider shape of
+             * the other sprite is then checked against the rest of the move.
+             */
+            if ( first instanceof SweptCollider || second instanceof SweptCollider )
+            {
+                if ( continuous )
+                {
+                    timeOfImpact = SweptBounds.timeOfImpact( first, second );
+                    if ( timeOfImpact != SweptBounds.NO_IMPACT
+                            && !Narrowphase.intersectsFrom( first, second, timeOfImpact ) )
+                    {
+                        timeOfImpact = SweptBounds.NO_IMPACT;
+                    }
+                }
+                else if ( !Narrowphase.intersects( first, second ) )
+                {
+                    timeOfImpact = SweptBounds.NO_IMPACT;
+                }
+            }
+            else if ( first instanceof ShapedCollider || second instanceof ShapedCollider )
+            {
+                /**
+                 * The broadphase only compared bounding boxes, compare the
+                 * collider shapes of sprites that have one
+                 */
+                if ( !Narrowphase.intersects( first, second ) )
+                {
+                    timeOfImpact = SweptBounds.NO_IMPACT;
+                }
+            }
+
+            byte result = 0;
+            if ( timeOfImpact != SweptBounds.NO_IMPACT )
+            {
+                result = TOUCHING;
+                if ( testContact( first, second, timeOfImpact ) )
+                {
+                    result |= NOTIFY_FIRST;
+                }
+                if ( testContact( second, first, timeOfImpact ) )
+                {
+                    result |= NOTIFY_SECOND;
+                }
+            }
+            pairImpact[ pair ] = timeOfImpact;
+            pairResult[ pair ] = result;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package libs;
+
+/**
+ * A contact between two sprites whose bounds overlap. The collision pass
+ * passes the same contact to both sprites, so each one can tell which sprite
+ * it touched with getOther.
+ * 
+ * The collision pass reuses its contact object for every pair, so a contact
+ * listener must not keep it after it returns.
+ * 
+ * @author williamhooper
+ */
+public class Contact
+{
+    private Sprite first;
+    private Sprite second;
+    private double timeOfImpact;
+
+    /**
+     * Constructor
+     * 
+     */
+    public Contact( )
+    {}
+
+    /**
+     * Return the first sprite of the contact
+     * 
+     * @return Sprite
+     */
+    public Sprite getFirst()
+    {
+        return first;
+    }
+
+    /**
+     * Return the sprite of the contact that is not the passed sprite
+     * 
+     * @param sprite
+     * @return Sprite
+     */
+    public Sprite getOther( Sprite sprite )
+    {
+        return ( sprite == first ) ? second : first;
+    }
+
+    /**
+     * Return the second sprite of the contact
+     * 
+     * @return Sprite
+     */
+    public Sprite getSecond()
+    {
+        return second;
+    }
+
+    /**
+     * Return the fraction of the tick, from 0 to 1, at which the sprites
+     * first touched during their last move. Contacts found by a collision
+     * pass that is not continuous, or without a swept collider, are found
+     * at the end of the move and have a time of impact of 1.
+     * 
+     * @return double
+     */
+    public double getTimeOfImpact()
+    {
+        return timeOfImpact;
+    }
+
+    /**
+     * Set the sprites and time of impact of the contact
+     * 
+     * @param first
+     * @param second
+     * @param timeOfImpact
+     */
+    void set( Sprite first, Sprite second, double timeOfImpact )
+    {
+        this.first = first;
+        this.second = second;
+        this.timeOfImpact = timeOfImpact;
+    }
+}
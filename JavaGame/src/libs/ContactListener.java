@@ -0,0 +1,20 @@
+package libs;
+
+/**
+ * Contact listener. A sprite that implements this interface is told about its
+ * contacts by the collision pass instead of having checkCollision called. The
+ * bounds of both sprites of a contact are known to overlap, so the listener
+ * only has to decide what the contact means.
+ * 
+ * @author williamhooper
+ */
+
+public interface ContactListener
+{
+    /**
+     * Receive a contact with another sprite
+     * 
+     * @param contact
+     */
+    public void contact( Contact contact );
+}
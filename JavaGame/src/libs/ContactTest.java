@@ -0,0 +1,29 @@
+package libs;
+
+/**
+ * Contact test. The side effect free part of a sprite's collision check. The
+ * collision pass asks a sprite that implements this interface whether it
+ * wants to be told about a contact before it tells it, and only tells it if
+ * the test passed.
+ * 
+ * The test may run on any thread and at the same time as the tests of other
+ * pairs. It must only read the state of the two sprites, without changing
+ * anything, dispatching game events or using the game context. Everything the
+ * contact leads to belongs in the contact method or checkCollision, which are
+ * called on the game engine thread in a fixed order.
+ * 
+ * @author williamhooper
+ */
+
+public interface ContactTest
+{
+    /**
+     * Return true if the sprite reacts to its contact with the other sprite
+     * 
+     * @param other
+     * @param timeOfImpact
+     *            fraction of the tick at which the bounds first touched
+     * @return boolean
+     */
+    public boolean testContact( Sprite other, double timeOfImpact );
+}
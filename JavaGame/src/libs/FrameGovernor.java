@@ -0,0 +1,263 @@
+package libs;
+
+/**
+ * Frame governor. Keeps a running average of how long the simulation and
+ * rendering phases take and decides how the game engine should cope when the
+ * machine cannot keep up with the tick rate: by skipping rendered frames to
+ * catch up on updates, by lowering the render quality, or by dropping
+ * simulation ticks so that the game runs slower than real time.
+ * 
+ * @author williamhooper
+ */
+public class FrameGovernor
+{
+    /**
+     * What to give up first when the game engine is overloaded
+     * 
+     * @author williamhooper
+     * 
+     */
+    public enum OverloadPolicy
+    {
+        /**
+         * Keep the simulation in step with real time. Render quality is
+         * lowered and as many frames are skipped as needed; ticks are dropped
+         * only when the simulation alone is slower than the tick rate.
+         */
+        SIMULATION_ACCURACY_FIRST,
+
+        /**
+         * Keep rendering every frame. Render quality is lowered and at most one
+         * frame is skipped; beyond that ticks are dropped and the game runs
+         * slower than real time.
+         */
+        LATENCY_FIRST
+    };
+
+    /**
+     * Render quality requested from the game
+     * 
+     * @author williamhooper
+     * 
+     */
+    public enum RenderQuality
+    {
+        HIGH, LOW
+    };
+
+    /**
+     * Weight of a new sample in the running averages
+     */
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    /**
+     * Load above which the render quality is lowered
+     */
+    private static final double HIGH_LOAD = 1.0;
+
+    /**
+     * Load below which the render quality is raised again
+     */
+    private static final double LOW_LOAD = 0.8;
+
+    /**
+     * Most catch-up ticks ever allowed in one frame
+     */
+    private static final int MAX_CATCH_UP_TICKS = 10;
+
+    /**
+     * Catch-up ticks allowed in one frame when not overloaded, the original
+     * fixed frame skip of the game engine
+     */
+    private static final int NORMAL_CATCH_UP_TICKS = 2;
+
+    private volatile double averageRenderTime;
+    private volatile double averageSimulationTime;
+    private volatile boolean droppingTicks;
+    private volatile int maxCatchUpTicks;
+    private volatile int noDelaysPerYield;
+    private volatile OverloadPolicy policy;
+    private volatile RenderQuality renderQuality;
+
+    /**
+     * Constructor
+     * 
+     */
+    public FrameGovernor( )
+    {
+        policy = OverloadPolicy.SIMULATION_ACCURACY_FIRST;
+        renderQuality = RenderQuality.HIGH;
+        maxCatchUpTicks = NORMAL_CATCH_UP_TICKS;
+        noDelaysPerYield = 16;
+    }
+
+    /**
+     * Return the average time in nanoseconds to render and draw a frame
+     * 
+     * @return double
+     */
+    public double getAverageRenderTime()
+    {
+        return averageRenderTime;
+    }
+
+    /**
+     * Return the average time in nanoseconds to run a simulation tick
+     * 
+     * @return double
+     */
+    public double getAverageSimulationTime()
+    {
+        return averageSimulationTime;
+    }
+
+    /**
+     * Return the number of catch-up ticks the game engine may run without
+     * rendering in the current frame
+     * 
+     * @return int
+     */
+    public int getMaxCatchUpTicks()
+    {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * Return the number of late frames in a row after which the game engine
+     * thread yields to other threads
+     * 
+     * @return int
+     */
+    public int getNoDelaysPerYield()
+    {
+        return noDelaysPerYield;
+    }
+
+    /**
+     * Return the overload policy
+     * 
+     * @return OverloadPolicy
+     */
+    public OverloadPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Return the render quality the game should use
+     * 
+     * @return RenderQuality
+     */
+    public RenderQuality getRenderQuality()
+    {
+        return renderQuality;
+    }
+
+    /**
+     * Return true if the game engine should drop the simulation ticks it
+     * cannot catch up on instead of carrying them over to the next frame
+     * 
+     * @return boolean
+     */
+    public boolean isDroppingTicks()
+    {
+        return droppingTicks;
+    }
+
+    /**
+     * Record the time taken to render and draw a frame
+     * 
+     * @param nanos
+     */
+    public void recordRender( long nanos )
+    {
+        averageRenderTime += AVERAGE_WEIGHT * ( nanos - averageRenderTime );
+    }
+
+    /**
+     * Record the time taken to run a simulation tick
+     * 
+     * @param nanos
+     */
+    public void recordSimulation( long nanos )
+    {
+        averageSimulationTime += AVERAGE_WEIGHT * ( nanos - averageSimulationTime );
+    }
+
+    /**
+     * Set the number of late frames in a row after which the game engine
+     * thread yields to other threads
+     * 
+     * @param noDelaysPerYield
+     */
+    public void setNoDelaysPerYield( int noDelaysPerYield )
+    {
+        this.noDelaysPerYield = noDelaysPerYield;
+    }
+
+    /**
+     * Set the overload policy
+     * 
+     * @param policy
+     */
+    public void setPolicy( OverloadPolicy policy )
+    {
+        this.policy = policy;
+    }
+
+    /**
+     * Decide how the next frame should run. Called by the game engine once per
+     * frame.
+     * 
+     * @param tickPeriod
+     *            desired time per simulation tick in nanoseconds
+     */
+    public void update( long tickPeriod )
+    {
+        double simulationTime = averageSimulationTime;
+        double renderTime = averageRenderTime;
+        double load = ( simulationTime + renderTime ) / tickPeriod;
+
+        /**
+         * Lower the render quality when a tick and a frame no longer fit in a
+         * tick period, with some hysteresis so it doesn't flicker
+         */
+        if ( load > HIGH_LOAD )
+        {
+            renderQuality = RenderQuality.LOW;
+        }
+        else if ( load < LOW_LOAD )
+        {
+            renderQuality = RenderQuality.HIGH;
+        }
+
+        if ( load <= HIGH_LOAD )
+        {
+            maxCatchUpTicks = NORMAL_CATCH_UP_TICKS;
+            droppingTicks = false;
+        }
+        else if ( simulationTime >= tickPeriod )
+        {
+            /**
+             * The simulation alone can't keep up, whatever we skip
+             */
+            maxCatchUpTicks = ( policy == OverloadPolicy.LATENCY_FIRST ) ? 0 : 1;
+            droppingTicks = true;
+        }
+        else if ( policy == OverloadPolicy.SIMULATION_ACCURACY_FIRST )
+        {
+            /**
+             * Render one frame every n ticks, with n chosen so that n ticks
+             * and a frame fit into n tick periods
+             */
+            int ticksPerFrame = ( int ) Math.ceil( renderTime / ( tickPeriod - simulationTime ) );
+            maxCatchUpTicks = Math.min( Math.max( ticksPerFrame - 1, NORMAL_CATCH_UP_TICKS ), MAX_CATCH_UP_TICKS );
+            droppingTicks = ticksPerFrame - 1 > MAX_CATCH_UP_TICKS;
+        }
+        else
+        {
+            maxCatchUpTicks = 1;
+            droppingTicks = true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package libs;
+
+/**
+ * Statistics on the interval between rendered frames. Used to measure how
+ * steadily a frame pacer holds the frame rate.
+ * 
+ * @author williamhooper
+ */
+public class FrameIntervalStats
+{
+    private long count;
+    private long lastFrameTime;
+    private long max;
+    private double mean;
+    private long min;
+    private boolean started;
+    private double sumSquares;
+
+    /**
+     * Constructor
+     * 
+     */
+    public FrameIntervalStats( )
+    {
+        reset();
+    }
+
+    /**
+     * Return the number of frame intervals measured
+     * 
+     * @return long
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Return the longest frame interval in nanoseconds
+     * 
+     * @return long
+     */
+    public synchronized long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Return the mean frame interval in nanoseconds
+     * 
+     * @return double
+     */
+    public synchronized double getMean()
+    {
+        return mean;
+    }
+
+    /**
+     * Return the shortest frame interval in nanoseconds
+     * 
+     * @return long
+     */
+    public synchronized long getMin()
+    {
+        return ( count == 0 ) ? 0L : min;
+    }
+
+    /**
+     * Return the standard deviation of the frame interval in nanoseconds
+     * 
+     * @return double
+     */
+    public synchronized double getStandardDeviation()
+    {
+        return Math.sqrt( getVariance() );
+    }
+
+    /**
+     * Return the variance of the frame interval in nanoseconds squared
+     * 
+     * @return double
+     */
+    public synchronized double getVariance()
+    {
+        return ( count > 1 ) ? sumSquares / ( count - 1 ) : 0.0;
+    }
+
+    /**
+     * Mark the start of a frame at the given System.nanoTime() value
+     * 
+     * @param frameTime
+     */
+    public synchronized void frame( long frameTime )
+    {
+        if ( started )
+        {
+            long interval = frameTime - lastFrameTime;
+
+            /**
+             * Welford's running mean and variance
+             */
+            count++;
+            double delta = interval - mean;
+            mean += delta / count;
+            sumSquares += delta * ( interval - mean );
+
+            if ( interval < min )
+            {
+                min = interval;
+            }
+            if ( interval > max )
+            {
+                max = interval;
+            }
+        }
+        lastFrameTime = frameTime;
+        started = true;
+    }
+
+    /**
+     * Clear the statistics
+     */
+    public synchronized void reset()
+    {
+        count = 0;
+        lastFrameTime = 0L;
+        started = false;
+        max = 0L;
+        mean = 0.0;
+        min = Long.MAX_VALUE;
+        sumSquares = 0.0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format( "frames %d, mean %.3f ms, std dev %.3f ms, min %.3f ms, max %.3f ms", count, mean / 1e6,
+                getStandardDeviation() / 1e6, getMin() / 1e6, max / 1e6 );
+    }
+}
@@ -0,0 +1,18 @@
+package libs;
+
+/**
+ * Frame pacer interface. A frame pacer decides how the game engine waits out
+ * the time left in a frame.
+ * 
+ * @author williamhooper
+ */
+public interface FramePacer
+{
+    /**
+     * Wait until System.nanoTime() reaches the deadline. Returns immediately
+     * if the deadline has already passed.
+     * 
+     * @param deadline
+     */
+    abstract public void waitUntil( long deadline );
+}
@@ -0,0 +1,28 @@
+package libs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one phase of a game engine frame
+ * 
+ * @author williamhooper
+ */
+@Name( "libs.FramePhase" )
+@Label( "Frame Phase" )
+@Category( { "Game Engine" } )
+@Description( "One collisions, update, render, draw or pacing phase of a frame" )
+@StackTrace( false )
+public class FramePhaseEvent extends Event
+{
+    @Label( "Phase" )
+    String phase;
+
+    @Label( "Tick" )
+    @Description( "Number of simulation ticks run before this phase" )
+    long tick;
+}
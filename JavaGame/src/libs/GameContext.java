@@ -0,0 +1,487 @@
+package libs;
+
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Game context. A game context owns everything one running game needs from
+ * the game library: the game engine with its clock and game event queue, the
+ * game event listeners, the keyboard and mouse listeners and, for a headless
+ * context, the display bounds and offscreen image, otherwise the display frame
+ * and its cursor state. It also owns the random
+ * number generator the game should use, so a recorded game can be replayed
+ * with the same seed.
+ * 
+ * The static methods of GameEngine, GameEventDispatcher and GameDisplay work on
+ * the context bound to the calling thread, or on the default context if none
+ * is bound. A single game never needs to know about contexts. To run several
+ * games in one JVM give each its own thread, create a headless context on
+ * that thread, bind it, build the game and start it with start( Game ). The
+ * game engine thread is bound to the context automatically.
+ * 
+ * @author williamhooper
+ */
+public class GameContext
+{
+    /**
+     * Context bound to each thread
+     */
+    private static final ThreadLocal< GameContext > boundContext = new ThreadLocal< GameContext >();
+
+    /**
+     * Context used by threads that have no context bound
+     */
+    private static final GameContext defaultContext = new GameContext();
+
+    /**
+     * Return the game context bound to the calling thread, or the default game
+     * context
+     * 
+     * @return GameContext
+     */
+    public static GameContext current()
+    {
+        GameContext context = boundContext.get();
+        return ( context != null ) ? context : defaultContext;
+    }
+
+    /**
+     * Return the default game context
+     * 
+     * @return GameContext
+     */
+    public static GameContext getDefault()
+    {
+        return defaultContext;
+    }
+
+    /**
+     * Unbind the calling thread from its game context. The thread goes back to
+     * using the default context.
+     * 
+     */
+    public static void unbind()
+    {
+        boundContext.remove();
+    }
+
+    private BufferStrategy bufferStrategy;
+    private volatile boolean captureCursor;
+    private Graphics currentGraphics;
+    private volatile Frame frame;
+    private GameEngine gameEngine;
+    private GameEventDispatcher gameEventDispatcher;
+    private final GameEvent.Pool gameEventPool = new GameEvent.Pool();
+    private Rectangle headlessBounds;
+    private Graphics headlessGraphics;
+    private BufferedImage headlessImage;
+    private volatile boolean inputDeferred;
+    private ArrayList< KeyboardEventListener > keyListeners;
+    private volatile MouseEvent lastMouseEvent;
+    private ArrayList< MouseEventListener > mouseListeners;
+    private ArrayDeque< InputEvent > pendingInput;
+    private Random random;
+    private Robot robot;
+
+    /**
+     * Constructor, create a game context that uses the display created with
+     * GameDisplay
+     * 
+     */
+    public GameContext( )
+    {
+        gameEventDispatcher = new GameEventDispatcher();
+        keyListeners = new ArrayList< KeyboardEventListener >();
+        mouseListeners = new ArrayList< MouseEventListener >();
+        pendingInput = new ArrayDeque< InputEvent >();
+        random = new Random();
+    }
+
+    /**
+     * Constructor, create a game context with its own headless display of the
+     * given size
+     * 
+     * @param width
+     * @param height
+     */
+    public GameContext( int width, int height )
+    {
+        this();
+        headlessBounds = new Rectangle( 0, 0, width, height );
+    }
+
+    /**
+     * Bind the calling thread to this game context
+     * 
+     */
+    public void bind()
+    {
+        boundContext.set( this );
+    }
+
+    /**
+     * Return the random number generator of this context. Game code that must
+     * replay the same way should use this instead of Math.random().
+     * 
+     * @return Random
+     */
+    public Random getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * Return the statistics of the game engine of this context. Unlike the
+     * static GameEngine accessors this does not depend on the context bound to
+     * the calling thread.
+     * 
+     * @return GameEngine.Stats
+     */
+    public GameEngine.Stats getStats()
+    {
+        return getGameEngine().getStats();
+    }
+
+    /**
+     * Return true if keyboard and mouse events are deferred to the next tick
+     * 
+     * @return boolean
+     */
+    public boolean isInputDeferred()
+    {
+        return inputDeferred;
+    }
+
+    /**
+     * Return true if the game engine of this context is running
+     * 
+     * @return boolean
+     */
+    public boolean isRunning()
+    {
+        return getGameEngine().isGameRunning();
+    }
+
+    /**
+     * Set to true to defer keyboard and mouse events. Deferred events are
+     * queued and delivered by the game engine thread at the start of the next
+     * tick instead of on the AWT event thread as they arrive.
+     * 
+     * @param value
+     */
+    public void setInputDeferred( boolean value )
+    {
+        inputDeferred = value;
+    }
+
+    /**
+     * Start the game engine of this context with the given game. Like
+     * GameEngine.start( Game ) this does not return until the game engine
+     * stops. The calling thread is bound to this context while the game runs.
+     * 
+     * @param game
+     */
+    public void start( Game game )
+    {
+        GameContext previous = boundContext.get();
+        bind();
+        try
+        {
+            GameEngine.start( game );
+        }
+        finally
+        {
+            boundContext.set( previous );
+        }
+    }
+
+    /**
+     * Stop the game engine of this context
+     * 
+     */
+    public void stop()
+    {
+        getGameEngine().stopGame();
+    }
+
+    /**
+     * Bind the calling thread to this game context for a while, such as the AWT
+     * event thread delivering input to this context's listeners. Returns the
+     * context the thread was bound to, to hand back to exit().
+     * 
+     * @return GameContext, null if the thread was not bound
+     */
+    GameContext enter()
+    {
+        GameContext previous = boundContext.get();
+        bind();
+        return previous;
+    }
+
+    /**
+     * Put back the context the calling thread was bound to before enter()
+     * 
+     * @param previous
+     */
+    static void exit( GameContext previous )
+    {
+        if ( previous != null )
+        {
+            previous.bind();
+        }
+        else
+        {
+            unbind();
+        }
+    }
+
+    /**
+     * Return the buffer strategy of the display frame
+     * 
+     * @return BufferStrategy
+     */
+    BufferStrategy getBufferStrategy()
+    {
+        return bufferStrategy;
+    }
+
+    /**
+     * Return the graphics context last handed out for the display frame
+     * 
+     * @return Graphics
+     */
+    Graphics getCurrentGraphics()
+    {
+        return currentGraphics;
+    }
+
+    /**
+     * Return the display frame, null if none was created
+     * 
+     * @return Frame
+     */
+    Frame getFrame()
+    {
+        return frame;
+    }
+
+    /**
+     * Return the game engine, creating it if needed
+     * 
+     * @return GameEngine
+     */
+    synchronized GameEngine getGameEngine()
+    {
+        if ( gameEngine == null )
+        {
+            gameEngine = new GameEngine( this );
+        }
+        return gameEngine;
+    }
+
+    /**
+     * Return the game event dispatcher
+     * 
+     * @return GameEventDispatcher
+     */
+    GameEventDispatcher getGameEventDispatcher()
+    {
+        return gameEventDispatcher;
+    }
+
+    /**
+     * Return the pool of recycled game events
+     * 
+     * @return GameEvent.Pool
+     */
+    GameEvent.Pool getGameEventPool()
+    {
+        return gameEventPool;
+    }
+
+    /**
+     * Return the headless display bounds, null if the context is not headless
+     * 
+     * @return Rectangle
+     */
+    Rectangle getHeadlessBounds()
+    {
+        return headlessBounds;
+    }
+
+    /**
+     * Return the graphics context last handed out for the headless display
+     * 
+     * @return Graphics
+     */
+    Graphics getHeadlessGraphics()
+    {
+        return headlessGraphics;
+    }
+
+    /**
+     * Return the offscreen image of the headless display, creating it if
+     * needed
+     * 
+     * @return BufferedImage
+     */
+    synchronized BufferedImage getHeadlessImage()
+    {
+        if ( headlessImage == null )
+        {
+            headlessImage = new BufferedImage( headlessBounds.width, headlessBounds.height, BufferedImage.TYPE_INT_RGB );
+        }
+        return headlessImage;
+    }
+
+    /**
+     * Return the keyboard listeners
+     * 
+     * @return ArrayList< KeyboardEventListener >
+     */
+    ArrayList< KeyboardEventListener > getKeyListeners()
+    {
+        return keyListeners;
+    }
+
+    /**
+     * Return the last mouse event inside the display frame
+     * 
+     * @return MouseEvent
+     */
+    MouseEvent getLastMouseEvent()
+    {
+        return lastMouseEvent;
+    }
+
+    /**
+     * Return the mouse listeners
+     * 
+     * @return ArrayList< MouseEventListener >
+     */
+    ArrayList< MouseEventListener > getMouseListeners()
+    {
+        return mouseListeners;
+    }
+
+    /**
+     * Return the robot that keeps the mouse on the display frame
+     * 
+     * @return Robot
+     */
+    Robot getRobot()
+    {
+        return robot;
+    }
+
+    /**
+     * Return true if the mouse cursor is captured by the display frame
+     * 
+     * @return boolean
+     */
+    boolean isCaptureCursor()
+    {
+        return captureCursor;
+    }
+
+    /**
+     * Return the next deferred keyboard or mouse event, null if there is none
+     * 
+     * @return InputEvent
+     */
+    InputEvent pollInput()
+    {
+        synchronized ( pendingInput )
+        {
+            return pendingInput.poll();
+        }
+    }
+
+    /**
+     * Queue a deferred keyboard or mouse event
+     * 
+     * @param ie
+     */
+    void queueInput( InputEvent ie )
+    {
+        synchronized ( pendingInput )
+        {
+            pendingInput.add( ie );
+        }
+    }
+
+    /**
+     * Set whether the mouse cursor is captured by the display frame
+     * 
+     * @param value
+     */
+    void setCaptureCursor( boolean value )
+    {
+        captureCursor = value;
+    }
+
+    /**
+     * Set the graphics context last handed out for the display frame
+     * 
+     * @param graphics
+     */
+    void setCurrentGraphics( Graphics graphics )
+    {
+        currentGraphics = graphics;
+    }
+
+    /**
+     * Set the display frame with its buffer strategy and mouse robot, nulls
+     * once the frame is disposed
+     * 
+     * @param frame
+     * @param bufferStrategy
+     * @param robot
+     */
+    void setFrame( Frame frame, BufferStrategy bufferStrategy, Robot robot )
+    {
+        this.frame = frame;
+        this.bufferStrategy = bufferStrategy;
+        this.robot = robot;
+    }
+
+    /**
+     * Set the headless display bounds, null to use the GameDisplay frame
+     * 
+     * @param bounds
+     */
+    synchronized void setHeadlessBounds( Rectangle bounds )
+    {
+        headlessBounds = bounds;
+        headlessImage = null;
+    }
+
+    /**
+     * Set the graphics context last handed out for the headless display
+     * 
+     * @param graphics
+     */
+    void setHeadlessGraphics( Graphics graphics )
+    {
+        headlessGraphics = graphics;
+    }
+
+    /**
+     * Set the last mouse event inside the display frame
+     * 
+     * @param me
+     */
+    void setLastMouseEvent( MouseEvent me )
+    {
+        lastMouseEvent = me;
+    }
+}
@@ -16,48 +16,50 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.Toolkit;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
 /**
- * Game display
+ * Game display. The display frame and its cursor state belong to the game
+ * context of the calling thread, like the headless display.
  * 
  * @author williamhooper
  */
 public class GameDisplay
 {
-    private static BufferStrategy bufferStrategy;
-    private static boolean captureCursor;
-    private static Graphics currentGraphics;
-    private static Frame frameInstance = null;
-    private static ArrayList< KeyboardEventListener > keyListeners = new ArrayList< KeyboardEventListener >();
-    private static MouseEvent lastMouseEvent;
-    private static ArrayList< MouseEventListener > mouseListeners = new ArrayList< MouseEventListener >();
-    private static Robot robot;
-
     /**
-     * Add a keyboard listener
+     * Add a keyboard listener to the game context of the calling thread
      * 
      * @param kel
      */
-    public static synchronized void addKeyboardListener( KeyboardEventListener kel )
+    public static void addKeyboardListener( KeyboardEventListener kel )
     {
-        keyListeners.add( kel );
+        ArrayList< KeyboardEventListener > keyListeners = GameContext.current().getKeyListeners();
+        synchronized ( keyListeners )
+        {
+            keyListeners.add( kel );
+        }
     }
 
     /**
-     * Add a mouse listener
+     * Add a mouse listener to the game context of the calling thread
      * 
      * @param mel
      */
-    public static synchronized void addMouseListener( MouseEventListener mel )
+    public static void addMouseListener( MouseEventListener mel )
     {
-        mouseListeners.add( mel );
+        ArrayList< MouseEventListener > mouseListeners = GameContext.current().getMouseListeners();
+        synchronized ( mouseListeners )
+        {
+            mouseListeners.add( mel );
+        }
     }
 
     /**
@@ -68,7 +70,7 @@ public class GameDisplay
      */
     public static void captureCursor( boolean value )
     {
-        captureCursor = value;
+        GameContext.current().setCaptureCursor( value );
     }
 
     /**
@@ -80,17 +82,22 @@ public class GameDisplay
      */
     public static void create( int width, int height )
     {
-        if ( frameInstance == null )
+        /**
+         * Events from the frame go to the listeners of the game context that
+         * created it
+         */
+        final GameContext context = GameContext.current();
+        if ( context.getFrame() == null && !isHeadless() )
         {
             GraphicsEnvironment env = GraphicsEnvironment.getLocalGraphicsEnvironment();
             GraphicsDevice screenDevice = env.getDefaultScreenDevice();
             GraphicsConfiguration gc = screenDevice.getDefaultConfiguration();
-            frameInstance = new Frame( gc );
+            final Frame frameInstance = new Frame( gc );
 
             /**
              * Set the capture cursor state to false
              */
-            captureCursor = false;
+            context.setCaptureCursor( false );
 
             /**
              * Turn off auto repaint and decorations
@@ -117,6 +124,7 @@ public class GameDisplay
             /**
              * Create a robot to manage our mouse
              */
+            Robot robot;
             try
             {
                 robot = new Robot();
@@ -146,18 +154,12 @@ public class GameDisplay
                      */
                     if ( !frameInstance.getBounds().contains( me.getXOnScreen(), me.getYOnScreen() ) )
                     {
-                        processMouseEvent( me );
+                        processMouseEvent( context, me );
                     }
                     else
                     {
-                        synchronized ( mouseListeners )
-                        {
-                            for ( MouseEventListener listener : mouseListeners )
-                            {
-                                listener.mouseEvent( me );
-                            }
-                            lastMouseEvent = me;
-                        }
+                        fireInput( context, me );
+                        context.setLastMouseEvent( me );
                     }
                 }
 
@@ -169,18 +171,12 @@ public class GameDisplay
                      */
                     if ( !frameInstance.getBounds().contains( me.getXOnScreen(), me.getYOnScreen() ) )
                     {
-                        processMouseEvent( me );
+                        processMouseEvent( context, me );
                     }
                     else
                     {
-                        synchronized ( mouseListeners )
-                        {
-                            for ( MouseEventListener listener : mouseListeners )
-                            {
-                                listener.mouseEvent( me );
-                            }
-                            lastMouseEvent = me;
-                        }
+                        fireInput( context, me );
+                        context.setLastMouseEvent( me );
                     }
                 }
             } );
@@ -193,49 +189,28 @@ public class GameDisplay
                 @Override
                 public void mousePressed( MouseEvent me )
                 {
-                    synchronized ( mouseListeners )
-                    {
-                        for ( MouseEventListener listener : mouseListeners )
-                        {
-                            listener.mouseEvent( me );
-                        }
-
-                    }
-                    lastMouseEvent = me;
+                    fireInput( context, me );
+                    context.setLastMouseEvent( me );
                 }
 
                 @Override
                 public void mouseReleased( MouseEvent me )
                 {
-                    synchronized ( mouseListeners )
-                    {
-                        for ( MouseEventListener listener : mouseListeners )
-                        {
-                            listener.mouseEvent( me );
-                        }
-
-                    }
-                    lastMouseEvent = me;
+                    fireInput( context, me );
+                    context.setLastMouseEvent( me );
                 }
 
                 @Override
                 public void mouseClicked( MouseEvent me )
                 {
-                    synchronized ( mouseListeners )
-                    {
-                        for ( MouseEventListener listener : mouseListeners )
-                        {
-                            listener.mouseEvent( me );
-                        }
-
-                    }
-                    lastMouseEvent = me;
+                    fireInput( context, me );
+                    context.setLastMouseEvent( me );
                 }
 
                 @Override
                 public void mouseExited( MouseEvent me )
                 {
-                    processMouseEvent( me );
+                    processMouseEvent( context, me );
                 }
             } );
 
@@ -247,19 +222,13 @@ public class GameDisplay
                 @Override
                 public void keyPressed( KeyEvent ke )
                 {
-                    for ( KeyboardEventListener listener : keyListeners )
-                    {
-                        listener.keyboardEvent( ke );
-                    }
+                    fireInput( context, ke );
                 }
 
                 @Override
                 public void keyReleased( KeyEvent ke )
                 {
-                    for ( KeyboardEventListener listener : keyListeners )
-                    {
-                        listener.keyboardEvent( ke );
-                    }
+                    fireInput( context, ke );
                 }
             } );
 
@@ -275,7 +244,27 @@ public class GameDisplay
              * Create a double buffer strategy
              */
             frameInstance.createBufferStrategy( 2 );
-            bufferStrategy = frameInstance.getBufferStrategy();
+            context.setFrame( frameInstance, frameInstance.getBufferStrategy(), robot );
+        }
+    }
+
+    /**
+     * Create a headless game display for the game context of the calling
+     * thread. A headless display has no frame and receives no mouse or keyboard
+     * events. It reports the given bounds and renders into an offscreen image,
+     * so a game can run on a machine without a screen. Once a headless display
+     * exists create() does nothing.
+     * 
+     * @param width
+     * @param height
+     */
+    public static void createHeadless( int width, int height )
+    {
+        GameContext context = GameContext.current();
+        if ( context.getFrame() == null && !isHeadless() )
+        {
+            context.setHeadlessBounds( new Rectangle( 0, 0, width, height ) );
+            context.setCaptureCursor( false );
         }
     }
 
@@ -305,13 +294,19 @@ public class GameDisplay
      */
     public static void dispose()
     {
-        if ( frameInstance != null )
+        GameContext context = GameContext.current();
+        Frame frameInstance = context.getFrame();
+        if ( isHeadless() )
+        {
+            context.setHeadlessBounds( null );
+        }
+        else if ( frameInstance != null )
         {
             /**
              * Dispose of the frame instance and set to null
              */
             frameInstance.dispose();
-            frameInstance = null;
+            context.setFrame( null, null, null );
         }
         else
         {
@@ -326,7 +321,14 @@ public class GameDisplay
      */
     public static Rectangle getBounds()
     {
-        if ( frameInstance != null )
+        GameContext context = GameContext.current();
+        Rectangle headlessBounds = context.getHeadlessBounds();
+        Frame frameInstance = context.getFrame();
+        if ( headlessBounds != null )
+        {
+            return new Rectangle( headlessBounds );
+        }
+        else if ( frameInstance != null )
         {
             return new Rectangle( 0, 0, frameInstance.getWidth(), frameInstance.getHeight() );
         }
@@ -343,9 +345,17 @@ public class GameDisplay
      */
     public static Graphics getContext()
     {
-        if ( frameInstance != null )
+        GameContext context = GameContext.current();
+        if ( isHeadless() )
+        {
+            Graphics headlessGraphics = getHeadlessImage().createGraphics();
+            context.setHeadlessGraphics( headlessGraphics );
+            return headlessGraphics;
+        }
+        else if ( context.getFrame() != null )
         {
-            currentGraphics = bufferStrategy.getDrawGraphics();
+            Graphics currentGraphics = context.getBufferStrategy().getDrawGraphics();
+            context.setCurrentGraphics( currentGraphics );
             return currentGraphics;
         }
         else
@@ -354,13 +364,35 @@ public class GameDisplay
         }
     }
 
+    /**
+     * Return the offscreen image of a headless game display
+     * 
+     * @return BufferedImage
+     */
+    public static BufferedImage getHeadlessImage()
+    {
+        if ( isHeadless() )
+        {
+            return GameContext.current().getHeadlessImage();
+        }
+        else
+        {
+            throw new RuntimeException( "Headless game display not created" );
+        }
+    }
+
     /**
      * Hide the cursor
      * 
      */
     public static void hideCursor()
     {
-        if ( frameInstance != null )
+        Frame frameInstance = GameContext.current().getFrame();
+        if ( isHeadless() )
+        {
+            return;
+        }
+        else if ( frameInstance != null )
         {
             /**
              * Hide the mouse cursor
@@ -382,7 +414,18 @@ public class GameDisplay
      */
     public static boolean isCapturedCursor()
     {
-        return captureCursor;
+        return GameContext.current().isCaptureCursor();
+    }
+
+    /**
+     * Return true if the game display of the calling thread's game context is
+     * headless
+     * 
+     * @return boolean
+     */
+    public static boolean isHeadless()
+    {
+        return GameContext.current().getHeadlessBounds() != null;
     }
 
     /**
@@ -391,7 +434,12 @@ public class GameDisplay
      */
     public static void setFullScreen()
     {
-        if ( frameInstance != null )
+        Frame frameInstance = GameContext.current().getFrame();
+        if ( isHeadless() )
+        {
+            return;
+        }
+        else if ( frameInstance != null )
         {
             int width = frameInstance.getWidth();
             int height = frameInstance.getHeight();
@@ -428,8 +476,23 @@ public class GameDisplay
      */
     public static void update()
     {
-        if ( frameInstance != null )
+        GameContext context = GameContext.current();
+        if ( isHeadless() )
         {
+            /**
+             * Nothing to show, just dispose of the graphics
+             */
+            Graphics headlessGraphics = context.getHeadlessGraphics();
+            if ( headlessGraphics != null )
+            {
+                headlessGraphics.dispose();
+            }
+        }
+        else if ( context.getFrame() != null )
+        {
+            BufferStrategy bufferStrategy = context.getBufferStrategy();
+            Graphics currentGraphics = context.getCurrentGraphics();
+
             /**
              * If the buffer got lost (graphics memory reallocated before we
              * were done with it) then don't show.
@@ -458,24 +521,91 @@ public class GameDisplay
         }
     }
 
+    /**
+     * Deliver a keyboard or mouse event to the listeners of a game context
+     * 
+     * @param context
+     * @param ie
+     */
+    static void deliverInput( GameContext context, InputEvent ie )
+    {
+        if ( ie instanceof KeyEvent )
+        {
+            ArrayList< KeyboardEventListener > keyListeners = context.getKeyListeners();
+            synchronized ( keyListeners )
+            {
+                for ( KeyboardEventListener listener : keyListeners )
+                {
+                    listener.keyboardEvent( ( KeyEvent ) ie );
+                }
+            }
+        }
+        else if ( ie instanceof MouseEvent )
+        {
+            ArrayList< MouseEventListener > mouseListeners = context.getMouseListeners();
+            synchronized ( mouseListeners )
+            {
+                for ( MouseEventListener listener : mouseListeners )
+                {
+                    listener.mouseEvent( ( MouseEvent ) ie );
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass a keyboard or mouse event from the frame to a game context. If the
+     * context defers input the event is queued for the game engine to deliver
+     * at the start of the next tick, otherwise it is delivered now with the
+     * AWT event thread bound to the context, so listeners calling the static
+     * library methods reach their own game.
+     * 
+     * @param context
+     * @param ie
+     */
+    private static void fireInput( GameContext context, InputEvent ie )
+    {
+        if ( context.isInputDeferred() )
+        {
+            context.queueInput( ie );
+        }
+        else
+        {
+            GameContext previous = context.enter();
+            try
+            {
+                deliverInput( context, ie );
+            }
+            finally
+            {
+                GameContext.exit( previous );
+            }
+        }
+    }
+
     /**
      * Process the mouse event to keep the mouse movement within the game
      * display. Allow the mouse to escape the frame when the shift key is held
      * down.
      * 
+     * @param context
      * @param me
      * @return
      */
-    private static void processMouseEvent( MouseEvent me )
+    private static void processMouseEvent( GameContext context, MouseEvent me )
     {
+        Frame frameInstance = context.getFrame();
+        MouseEvent lastMouseEvent = context.getLastMouseEvent();
+
         /**
          * If the mouse has left the building then force the mouse back onto the
          * frame. Since the mouse has left make sure to adjust the coordinates
          * relative to the frame
          */
-        if ( captureCursor && !me.isShiftDown() )
+        if ( context.isCaptureCursor() && !me.isShiftDown() && lastMouseEvent != null )
         {
-            robot.mouseMove( frameInstance.getX() + lastMouseEvent.getX(), frameInstance.getY() + lastMouseEvent.getY() );
+            context.getRobot().mouseMove( frameInstance.getX() + lastMouseEvent.getX(),
+                    frameInstance.getY() + lastMouseEvent.getY() );
         }
     }
 
@@ -1,9 +1,18 @@
 package libs;
 
-import java.util.LinkedList;
+import java.awt.event.InputEvent;
+import java.util.ArrayList;
+
+import libs.GameEvent.GameEventType;
 
 /**
- * Threaded game engine, with support for game events and collisions
+ * Threaded game engine, with support for game events and collisions. There is
+ * one game engine per game context; the static methods work on the game engine
+ * of the context bound to the calling thread.
+ * 
+ * The static statistics accessors read the game engine of the calling thread's
+ * context too, so a thread that is not bound reads the default context. A
+ * thread monitoring another game should read GameContext.getStats() instead.
  * 
  * @author williamhooper
  */
@@ -11,14 +20,347 @@ import java.util.LinkedList;
 public class GameEngine implements Runnable, GameEventListener
 {
     /**
-     * Game engine instance
+     * Phases of a frame that the game engine times
+     * 
+     * @author williamhooper
+     * 
      */
-    private static GameEngine gameEngineInstance = null;
+    public enum Phase
+    {
+        COLLISIONS, UPDATE, RENDER, DRAW, PACING
+    };
 
     /**
-     * game thread object
+     * Statistics of one game engine. A monitoring thread can read the
+     * statistics of a particular game through GameContext.getStats() without
+     * binding itself to that game's context.
+     * 
+     * @author williamhooper
+     * 
+     */
+    public static final class Stats
+    {
+        private final GameEngine engine;
+
+        /**
+         * Package constructor, statistics are created by their game engine
+         * 
+         * @param engine
+         */
+        Stats( GameEngine engine )
+        {
+            this.engine = engine;
+        }
+
+        /**
+         * Return the number of game events merged away by event coalescing
+         * 
+         * @return long
+         */
+        public long getCoalescedEvents()
+        {
+            return engine.eventCoalescer.getCoalescedCount();
+        }
+
+        /**
+         * Return the game event queue, for its backpressure statistics. Null until
+         * the engine is started.
+         * 
+         * @return GameEventQueue
+         */
+        public GameEventQueue getEventQueue()
+        {
+            return engine.gameEventQueue;
+        }
+
+        /**
+         * Return the queue-wait latency histogram for a game event type. Values are
+         * the nanoseconds from dispatching an event to the engine starting to
+         * handle it.
+         * 
+         * @param type
+         * @return LatencyHistogram
+         */
+        public LatencyHistogram getEventLatencyHistogram( GameEventType type )
+        {
+            return engine.eventLatencyHistograms[ type.ordinal() ];
+        }
+
+        /**
+         * Return the number of game events waiting in the event queue
+         * 
+         * @return int
+         */
+        public int getEventQueueDepth()
+        {
+            GameEventQueue queue = engine.gameEventQueue;
+            return ( queue != null ) ? queue.size() : 0;
+        }
+
+        /**
+         * Return the number of game events handled since the engine started
+         * 
+         * @return long
+         */
+        public long getEventsHandled()
+        {
+            return engine.eventsHandled;
+        }
+
+        /**
+         * Return the number of game events handled per second, measured over the
+         * last second
+         * 
+         * @return double
+         */
+        public double getEventsPerSecond()
+        {
+            long windowStart = engine.eventRateWindowStart;
+            long elapsed = System.nanoTime() - windowStart;
+
+            /**
+             * No event closed the current window, so the rate has dropped since
+             * the last one was measured
+             */
+            if ( windowStart != 0L && elapsed >= NANOS_PER_SECOND )
+            {
+                return ( double ) ( engine.eventsHandled - engine.eventRateWindowCount ) * NANOS_PER_SECOND / elapsed;
+            }
+            return engine.eventsPerSecond;
+        }
+
+        /**
+         * Return the frame interval statistics. The statistics measure how
+         * steadily the frame pacer holds the frame rate.
+         * 
+         * @return FrameIntervalStats
+         */
+        public FrameIntervalStats getFrameIntervalStats()
+        {
+            return engine.frameIntervalStats;
+        }
+
+        /**
+         * Return the latency histogram for a frame phase. Values are in
+         * nanoseconds.
+         * 
+         * @param phase
+         * @return LatencyHistogram
+         */
+        public LatencyHistogram getPhaseHistogram( Phase phase )
+        {
+            return engine.phaseHistograms[ phase.ordinal() ];
+        }
+
+        /**
+         * Return the largest number of game events that waited in the event queue
+         * 
+         * @return long
+         */
+        public long getPeakEventQueueDepth()
+        {
+            GameEventQueue queue = engine.gameEventQueue;
+            return ( queue != null ) ? queue.getHighWaterMark() : 0;
+        }
+
+        /**
+         * Return the number of frames that were not rendered because the game
+         * engine was catching up on late updates
+         * 
+         * @return long
+         */
+        public long getSkippedFrames()
+        {
+            return engine.skippedFrames;
+        }
+
+        /**
+         * Return the number of simulation ticks run since the engine started
+         * 
+         * @return long
+         */
+        public long getTickCount()
+        {
+            return engine.tickCount;
+        }
+
+        /**
+         * Return the render quality the game should use. The render quality drops
+         * to LOW while the game engine is overloaded.
+         * 
+         * @return RenderQuality
+         */
+        public FrameGovernor.RenderQuality getRenderQuality()
+        {
+            return engine.frameGovernor.getRenderQuality();
+        }
+    }
+
+    /**
+     * Return the game time in milliseconds, the number of simulation ticks run
+     * times the tick period. Game code that must replay the same way should
+     * use this instead of System.currentTimeMillis().
+     * 
+     * @return long
+     */
+    public static long currentTimeMillis()
+    {
+        GameEngine engine = instance();
+        return engine.tickCount * engine.tickPeriod / NANOS_PER_MILLISECOND;
+    }
+
+    /**
+     * Return the number of game events merged away by event coalescing
+     * 
+     * @return long
+     */
+    public static long getCoalescedEvents()
+    {
+        return instance().stats.getCoalescedEvents();
+    }
+
+    /**
+     * Return the game event queue, for its backpressure statistics. Null until
+     * the engine is started.
+     * 
+     * @return GameEventQueue
+     */
+    public static GameEventQueue getEventQueue()
+    {
+        return instance().stats.getEventQueue();
+    }
+
+    /**
+     * Return the queue-wait latency histogram for a game event type. Values are
+     * the nanoseconds from dispatching an event to the engine starting to
+     * handle it.
+     * 
+     * @param type
+     * @return LatencyHistogram
+     */
+    public static LatencyHistogram getEventLatencyHistogram( GameEventType type )
+    {
+        return instance().stats.getEventLatencyHistogram( type );
+    }
+
+    /**
+     * Return the number of game events waiting in the event queue
+     * 
+     * @return int
+     */
+    public static int getEventQueueDepth()
+    {
+        return instance().stats.getEventQueueDepth();
+    }
+
+    /**
+     * Return the number of game events handled since the engine started
+     * 
+     * @return long
+     */
+    public static long getEventsHandled()
+    {
+        return instance().stats.getEventsHandled();
+    }
+
+    /**
+     * Return the number of game events handled per second, measured over the
+     * last second
+     * 
+     * @return double
+     */
+    public static double getEventsPerSecond()
+    {
+        return instance().stats.getEventsPerSecond();
+    }
+
+    /**
+     * Return the frame governor. The frame governor decides how many frames
+     * may be skipped to catch up on late updates, which render quality the
+     * game should use and when simulation ticks are dropped.
+     * 
+     * @return FrameGovernor
+     */
+    public static FrameGovernor getFrameGovernor()
+    {
+        return instance().frameGovernor;
+    }
+
+    /**
+     * Return the frame interval statistics. The statistics measure how
+     * steadily the frame pacer holds the frame rate.
+     * 
+     * @return FrameIntervalStats
+     */
+    public static FrameIntervalStats getFrameIntervalStats()
+    {
+        return instance().stats.getFrameIntervalStats();
+    }
+
+    /**
+     * Return the latency histogram for a frame phase. Values are in
+     * nanoseconds.
+     * 
+     * @param phase
+     * @return LatencyHistogram
+     */
+    public static LatencyHistogram getPhaseHistogram( Phase phase )
+    {
+        return instance().stats.getPhaseHistogram( phase );
+    }
+
+    /**
+     * Return the largest number of game events that waited in the event queue
+     * 
+     * @return long
+     */
+    public static long getPeakEventQueueDepth()
+    {
+        return instance().stats.getPeakEventQueueDepth();
+    }
+
+    /**
+     * Return the number of frames that were not rendered because the game
+     * engine was catching up on late updates
+     * 
+     * @return long
+     */
+    public static long getSkippedFrames()
+    {
+        return instance().stats.getSkippedFrames();
+    }
+
+    /**
+     * Return the number of simulation ticks run since the engine started
+     * 
+     * @return long
+     */
+    public static long getTickCount()
+    {
+        return instance().stats.getTickCount();
+    }
+
+    /**
+     * Return the render quality the game should use. The render quality drops
+     * to LOW while the game engine is overloaded.
+     * 
+     * @return RenderQuality
+     */
+    public static FrameGovernor.RenderQuality getRenderQuality()
+    {
+        return instance().stats.getRenderQuality();
+    }
+
+    /**
+     * Return the timer wheel. The game engine advances it once per simulation
+     * tick and runs expired timers on the game engine thread.
+     * 
+     * @return TimerWheel
      */
-    private static Thread gameThread;
+    public static TimerWheel getTimerWheel()
+    {
+        return instance().timerWheel;
+    }
 
     /**
      * Return true if the game engine is running
@@ -27,7 +369,233 @@ public class GameEngine implements Runnable, GameEventListener
      */
     public static boolean isRunning()
     {
-        return ( gameEngineInstance != null ) ? gameEngineInstance.running : false;
+        return instance().running;
+    }
+
+    /**
+     * Coalesce the game events handled at each tick boundary. Score events
+     * carrying a primitive value are added up into one event, and repeated
+     * Remove or AddLast events for the same attachment are dropped. Only
+     * applies when game events are handled at tick boundaries.
+     * 
+     * @param value
+     */
+    public static void setEventCoalescing( boolean value )
+    {
+        instance().eventCoalescing = value;
+    }
+
+    /**
+     * Set the size of the game event queue and how threads wait on it. When
+     * the queue is full, threads dispatching game events wait for room. Must
+     * be called before the engine is started.
+     * 
+     * @param capacity
+     *            number of events the queue holds, must be a power of two
+     * @param waitStrategy
+     */
+    public static void setEventQueue( int capacity, GameEventQueue.WaitStrategy waitStrategy )
+    {
+        if ( capacity <= 0 || Integer.bitCount( capacity ) != 1 )
+        {
+            throw new IllegalArgumentException( "Event queue capacity must be a power of two" );
+        }
+        if ( waitStrategy == null )
+        {
+            throw new IllegalArgumentException( "Wait strategy must not be null" );
+        }
+        GameEngine engine = instance();
+        engine.eventQueueCapacity = capacity;
+        engine.eventWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Set the game event types the game handles. The game engine only
+     * subscribes to these, so events of other types are never queued for the
+     * game. All types by default. Must be called before the engine is started.
+     * 
+     * @param types
+     */
+    public static void setGameEventTypes( GameEventType... types )
+    {
+        if ( types == null || types.length == 0 )
+        {
+            throw new IllegalArgumentException( "Game event types must not be empty" );
+        }
+        instance().gameEventTypes = types.clone();
+    }
+
+    /**
+     * Select the fixed timestep loop. With a fixed timestep the game is
+     * updated at the tick rate regardless of how fast frames are rendered, and
+     * a game implementing InterpolatedGame is handed an interpolation factor
+     * when it is rendered. Must be called before the engine is started.
+     * 
+     * @param value
+     */
+    public static void setFixedTimestep( boolean value )
+    {
+        instance().fixedTimestep = value;
+    }
+
+    /**
+     * Select the pipelined loop. The game engine thread checks collisions and
+     * updates the game while a separate render thread renders and draws the
+     * previous tick from a snapshot. The game must implement PipelinedGame.
+     * Must be called before the engine is started.
+     * 
+     * @param value
+     */
+    public static void setPipelined( boolean value )
+    {
+        instance().pipelined = value;
+    }
+
+    /**
+     * Set the frame pacer used to wait out the rest of each frame
+     * 
+     * @param pacer
+     */
+    public static void setFramePacer( FramePacer pacer )
+    {
+        if ( pacer == null )
+        {
+            throw new IllegalArgumentException( "Frame pacer must not be null" );
+        }
+        instance().framePacer = pacer;
+    }
+
+    /**
+     * Return the number of simulation ticks that cover a time in milliseconds,
+     * rounded up
+     * 
+     * @param millis
+     * @return long
+     */
+    public static long millisToTicks( long millis )
+    {
+        long tickPeriod = instance().tickPeriod;
+        return ( millis * NANOS_PER_MILLISECOND + tickPeriod - 1 ) / tickPeriod;
+    }
+
+    /**
+     * Record the game to an input recorder. Keyboard and mouse events are
+     * deferred to tick boundaries and recorded with every game event, and the
+     * random number generator of the game context is seeded from the
+     * recorder. Must be called before the engine is started.
+     * 
+     * @param recorder
+     */
+    public static void setInputRecorder( InputRecorder recorder )
+    {
+        GameEngine engine = instance();
+        engine.inputRecorder = recorder;
+        engine.context.setInputDeferred( true );
+        engine.context.getRandom().setSeed( recorder.getSeed() );
+    }
+
+    /**
+     * Replay a recorded game. Recorded keyboard and mouse events are delivered
+     * at the tick they were recorded on and live input is ignored, game events
+     * are checked against the recording, and the engine stops at the last
+     * recorded tick. Combine with setUnthrottled( true ) on a headless display
+     * to replay at maximum speed. Must be called before the engine is started.
+     * 
+     * @param replay
+     */
+    public static void setInputReplay( InputReplay replay )
+    {
+        GameEngine engine = instance();
+        engine.inputReplay = replay;
+        engine.context.setInputDeferred( true );
+        engine.context.getRandom().setSeed( replay.getSeed() );
+    }
+
+    /**
+     * Set what the game engine gives up first when it is overloaded
+     * 
+     * @param policy
+     */
+    public static void setOverloadPolicy( FrameGovernor.OverloadPolicy policy )
+    {
+        instance().frameGovernor.setPolicy( policy );
+    }
+
+    /**
+     * Set the number of rendered frames per second. In the fixed timestep loop
+     * a value of 0 renders as fast as possible. Must be called before the
+     * engine is started.
+     * 
+     * @param framesPerSecond
+     */
+    public static void setFrameRate( int framesPerSecond )
+    {
+        if ( framesPerSecond < 0 )
+        {
+            throw new IllegalArgumentException( "Frame rate must not be negative" );
+        }
+        instance().framePeriod = ( framesPerSecond == 0 ) ? 0L : NANOS_PER_SECOND / framesPerSecond;
+    }
+
+    /**
+     * Turn rendering on or off. With rendering off the game is never asked to
+     * render or draw, which is useful for simulations and benchmarks on a
+     * headless game display.
+     * 
+     * @param value
+     */
+    public static void setRendering( boolean value )
+    {
+        instance().rendering = value;
+    }
+
+    /**
+     * Set the number of simulation ticks (collisions and update) per second.
+     * Must be called before the engine is started.
+     * 
+     * @param ticksPerSecond
+     */
+    public static void setTickRate( int ticksPerSecond )
+    {
+        if ( ticksPerSecond <= 0 )
+        {
+            throw new IllegalArgumentException( "Tick rate must be positive" );
+        }
+        instance().tickPeriod = NANOS_PER_SECOND / ticksPerSecond;
+    }
+
+    /**
+     * Handle game events at tick boundaries. Instead of handling game events
+     * on the thread that called start( Game ) as they arrive, the game engine
+     * thread handles everything queued in one batch at the start of each
+     * tick, right after deferred input is delivered. Keyboard and mouse input
+     * is deferred as well, so every call into the game is made from the game
+     * engine thread and the game needs no locking. Events dispatched while a
+     * batch is handled are handled at the start of the next tick. Must be
+     * called before the engine is started.
+     * 
+     * @param value
+     */
+    public static void setTickBoundaryEvents( boolean value )
+    {
+        GameEngine engine = instance();
+        engine.tickBoundaryEvents = value;
+        if ( value )
+        {
+            engine.context.setInputDeferred( true );
+        }
+    }
+
+    /**
+     * Run the game as fast as possible. An unthrottled engine does not wait
+     * between ticks and renders after every tick if rendering is on. Must be
+     * called before the engine is started.
+     * 
+     * @param value
+     */
+    public static void setUnthrottled( boolean value )
+    {
+        instance().unthrottled = value;
     }
 
     /**
@@ -36,165 +604,594 @@ public class GameEngine implements Runnable, GameEventListener
      * 
      * @param game
      */
-    public static void start( Game game )
+    public static void start( Game game )
+    {
+        GameEngine engine = instance();
+        if ( engine.game == null )
+        {
+            if ( engine.pipelined && !( game instanceof PipelinedGame ) )
+            {
+                throw new RuntimeException( "Pipelined game engine requires a PipelinedGame" );
+            }
+
+            /**
+             * Initialize variables and register the game event listener
+             */
+            engine.game = game;
+            engine.gameEventQueue = new GameEventQueue( engine.eventQueueCapacity, engine.eventWaitStrategy );
+            GameEventDispatcher.addGameEventListener( engine, engine.gameEventTypes );
+
+            /**
+             * Gentlemen, start your engines. The engine counts as running from
+             * here so the game event manager does not quit before the game
+             * engine thread gets going.
+             */
+            engine.running = true;
+            engine.gameThread = new Thread( engine, "game engine" );
+            engine.eventConsumer = engine.tickBoundaryEvents ? engine.gameThread : Thread.currentThread();
+            engine.gameThread.start();
+
+            /**
+             * Go off and manage events, or wait for the game engine thread if
+             * it handles them itself
+             */
+            if ( engine.tickBoundaryEvents )
+            {
+                engine.joinGameThread();
+            }
+            else
+            {
+                engine.manageGameEvents();
+            }
+        }
+    }
+
+    /**
+     * Stop the game engine. Will not immediately stop the game engine. The game
+     * engine will stop at the beginning of the next frame update.
+     * 
+     */
+    public static void stop()
+    {
+        instance().running = false;
+    }
+
+    /**
+     * Create an array of latency histograms
+     * 
+     * @param count
+     * @return LatencyHistogram [ ]
+     */
+    private static LatencyHistogram [ ] newHistograms( int count )
+    {
+        LatencyHistogram [ ] histograms = new LatencyHistogram [ count ];
+        for ( int index = 0; index < histograms.length; index++ )
+        {
+            histograms[ index ] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Return the game engine of the calling thread's game context
+     * 
+     * @return GameEngine
+     */
+    private static GameEngine instance()
+    {
+        return GameContext.current().getGameEngine();
+    }
+
+    /**
+     * Default number of simulation ticks and rendered frames per second
+     */
+    private static final int DEFAULT_FPS = 60;
+
+    /**
+     * Upper limit on the time the fixed timestep loop will try to catch up in
+     * one frame. Prevents a spiral of death after a long stall.
+     */
+    private static final long MAX_FRAME_TIME = 250000000L;
+
+    /**
+     * Default number of game events the game event queue holds
+     */
+    private static final int DEFAULT_EVENT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Nanoseconds per millisecond
+     */
+    private static final long NANOS_PER_MILLISECOND = 1000000L;
+
+    /**
+     * Nanoseconds per second
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Game context this game engine belongs to
+     */
+    private final GameContext context;
+
+    /**
+     * Fixed timestep loop flag
+     */
+    private boolean fixedTimestep = false;
+
+    /**
+     * Pipelined update and render threads flag
+     */
+    private boolean pipelined = false;
+
+    /**
+     * Frame governor for overloaded frames
+     */
+    private final FrameGovernor frameGovernor = new FrameGovernor();
+
+    /**
+     * Statistics on the achieved frame interval
+     */
+    private final FrameIntervalStats frameIntervalStats = new FrameIntervalStats();
+
+    /**
+     * Frame pacer used to wait out the rest of each frame
+     */
+    private volatile FramePacer framePacer = StandardFramePacer.PARK_SPIN;
+
+    /**
+     * Desired time per rendered frame, 0 if unlimited
+     */
+    private long framePeriod = NANOS_PER_SECOND / DEFAULT_FPS;
+
+    /**
+     * Game object
+     */
+    private Game game;
+
+    /**
+     * game thread object
+     */
+    private Thread gameThread;
+
+    /**
+     * Game event queue for managing game events
+     */
+    private GameEventQueue gameEventQueue;
+
+    /**
+     * Game event types the game engine subscribes to for the game
+     */
+    private GameEventType [ ] gameEventTypes = GameEventType.values();
+
+    /**
+     * Thread that takes game events off the queue
+     */
+    private Thread eventConsumer;
+
+    /**
+     * Game events queued by the event consumer thread while the queue was
+     * full. The consumer cannot wait for itself to make room, so these are
+     * kept aside and handled after the queue.
+     */
+    private final ArrayList< GameEvent > eventOverflowList = new ArrayList< GameEvent >();
+
+    /**
+     * Coalesce game events at tick boundaries flag
+     */
+    private boolean eventCoalescing = false;
+
+    /**
+     * Coalescer for the game events handled at a tick boundary
+     */
+    private final GameEventCoalescer eventCoalescer = new GameEventCoalescer();
+
+    /**
+     * Number of game events the game event queue holds
+     */
+    private int eventQueueCapacity = DEFAULT_EVENT_QUEUE_CAPACITY;
+
+    /**
+     * How threads wait on the game event queue
+     */
+    private GameEventQueue.WaitStrategy eventWaitStrategy = GameEventQueue.WaitStrategy.PARK;
+
+    /**
+     * Queue-wait latency histograms, one per game event type
+     */
+    private final LatencyHistogram [ ] eventLatencyHistograms = newHistograms( GameEventType.values().length );
+
+    /**
+     * Number of game events handled, and the count and System.nanoTime() at
+     * the start of the current events per second window
+     */
+    private volatile long eventsHandled;
+    private volatile long eventRateWindowCount;
+    private volatile long eventRateWindowStart;
+
+    /**
+     * Game events handled per second over the last completed window
+     */
+    private volatile double eventsPerSecond;
+
+    /**
+     * Recorder for input and game events, null if not recording
+     */
+    private InputRecorder inputRecorder;
+
+    /**
+     * Replayed input and game events, null if not replaying
+     */
+    private InputReplay inputReplay;
+
+    /**
+     * Latency histograms for each frame phase
+     */
+    private final LatencyHistogram [ ] phaseHistograms = newHistograms( Phase.values().length );
+
+    /**
+     * Render and draw flag
+     */
+    private volatile boolean rendering = true;
+
+    /**
+     * Thread is running flag
+     */
+    private volatile boolean running;
+
+    /**
+     * Number of frames skipped to catch up on late updates
+     */
+    private volatile long skippedFrames;
+
+    /**
+     * Handle game events at tick boundaries flag
+     */
+    private boolean tickBoundaryEvents = false;
+
+    /**
+     * Game events handled at the current tick boundary
+     */
+    private final ArrayList< GameEvent > tickEventList = new ArrayList< GameEvent >();
+
+    /**
+     * Number of simulation ticks run
+     */
+    private volatile long tickCount;
+
+    /**
+     * Statistics of this game engine
+     */
+    private final Stats stats = new Stats( this );
+
+    /**
+     * Timer wheel advanced once per simulation tick
+     */
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    /**
+     * Run as fast as possible flag
+     */
+    private boolean unthrottled = false;
+
+    /**
+     * Desired time per simulation tick
+     */
+    private long tickPeriod = NANOS_PER_SECOND / DEFAULT_FPS;
+
+    /**
+     * Package constructor, game engines are created by game contexts
+     * 
+     * @param context
+     */
+    GameEngine( GameContext context )
+    {
+        this.context = context;
+    }
+
+    /**
+     * Return the statistics of this game engine
+     * 
+     * @return Stats
+     */
+    Stats getStats()
+    {
+        return stats;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException
+    {
+        throw new CloneNotSupportedException();
+    }
+
+    @Override
+    public void gameEvent( GameEvent ge )
+    {
+        ge.queuedTime = System.nanoTime();
+        if ( inputRecorder != null )
+        {
+            inputRecorder.recordGameEvent( tickCount, ge );
+        }
+        if ( inputReplay != null )
+        {
+            inputReplay.verifyGameEvent( tickCount, ge );
+        }
+        if ( !gameEventQueue.offer( ge ) && !gameEventQueue.isClosed() )
+        {
+            if ( Thread.currentThread() == eventConsumer )
+            {
+                eventOverflowList.add( ge );
+            }
+            else
+            {
+                gameEventQueue.put( ge );
+            }
+        }
+    }
+
+    /**
+     * The run method is part of the Runnable interface and needs to be
+     * implemented. It goes through an update-render-draw loop to drive the game
+     * engine.
+     * 
+     */
+    public void run()
+    {
+        context.bind();
+        running = true;
+        if ( unthrottled )
+        {
+            runUnthrottled();
+        }
+        else if ( pipelined )
+        {
+            runPipelined( ( PipelinedGame< ? > ) game );
+        }
+        else if ( fixedTimestep )
+        {
+            runFixedTimestep();
+        }
+        else
+        {
+            runVariableTimestep();
+        }
+
+        if ( inputRecorder != null )
+        {
+            inputRecorder.close( tickCount );
+        }
+
+        /**
+         * If we get to this point, it's because running was set to false. In
+         * that case, close the game event queue so no thread waits on it any
+         * longer, which also wakes the game event manager to quit, and exit
+         * the thread.
+         */
+        gameEventQueue.close();
+        return;
+    }
+
+    /**
+     * Return true if this game engine is running
+     * 
+     * @return boolean
+     */
+    boolean isGameRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Stop this game engine at the beginning of the next frame update
+     */
+    void stopGame()
+    {
+        running = false;
+    }
+
+    /**
+     * Fixed timestep loop. Simulation ticks are run from an accumulator of
+     * elapsed time so the tick rate does not depend on the render rate. The
+     * time left in the accumulator is handed to the renderer as a fraction of a
+     * tick.
+     */
+    private void runFixedTimestep()
     {
-        if ( gameEngineInstance == null )
+        long previousTime = System.nanoTime();
+        long accumulator = 0L;
+        long frameTime, currentTime;
+
+        while ( running )
         {
+            currentTime = System.nanoTime();
+            frameIntervalStats.frame( currentTime );
+            frameTime = currentTime - previousTime;
+            previousTime = currentTime;
+
             /**
-             * Create an instance of the game engine, initialize variables and
-             * register the game event listener
+             * Don't try to catch up on more than MAX_FRAME_TIME of lost time
              */
-            gameEngineInstance = new GameEngine();
-            gameEngineInstance.game = game;
-            gameEngineInstance.gameEventList = new LinkedList< GameEvent >();
-            GameEventDispatcher.addGameEventListener( gameEngineInstance );
+            if ( frameTime > MAX_FRAME_TIME )
+            {
+                frameTime = MAX_FRAME_TIME;
+            }
+            accumulator += frameTime;
+            frameGovernor.update( tickPeriod );
+
+            int ticks = 0;
+            while ( running && accumulator >= tickPeriod && ticks <= frameGovernor.getMaxCatchUpTicks() )
+            {
+                if ( ticks == 0 )
+                {
+                    tick();
+                }
+                else
+                {
+                    catchUpTick( ticks );
+                }
+                accumulator -= tickPeriod;
+                ticks++;
+            }
 
             /**
-             * Gentlemen, start your engines
+             * Drop the ticks we could not fit into this frame if the governor
+             * says so, otherwise carry them over to the next frame
              */
-            gameThread = new Thread( gameEngineInstance );
-            gameThread.start();
+            if ( frameGovernor.isDroppingTicks() )
+            {
+                accumulator %= tickPeriod;
+            }
 
             /**
-             * Go off and manage events
+             * Render with the fraction of a tick that has not been simulated
+             * yet
              */
-            gameEngineInstance.manageGameEvents();
+            renderFrame( ( double ) accumulator / tickPeriod );
+
+            if ( framePeriod > 0 )
+            {
+                pace( currentTime + framePeriod );
+            }
+            else
+            {
+                Thread.yield();
+            }
         }
     }
 
     /**
-     * Stop the game engine. Will not immediately stop the game engine. The game
-     * engine will stop at the beginning of the next frame update.
+     * Pipelined loop. The game engine thread runs collisions and update at the
+     * tick rate and publishes a snapshot after every tick. A render thread
+     * renders and draws the latest snapshot, so a frame costs the slower of the
+     * two halves rather than their sum. Late ticks are caught up on and dropped
+     * as the frame governor decides, as in the other loops; the governor still
+     * adds up tick and render time, so it judges the pipelined loop
+     * conservatively.
      * 
+     * @param pipelinedGame
      */
-    public static void stop()
+    private < S > void runPipelined( final PipelinedGame< S > pipelinedGame )
     {
-        if ( gameEngineInstance != null )
-        {
-            gameEngineInstance.running = false;
-        }
-    }
-
-    /**
-     * Number of frames per second
-     */
-    private final int DEFAULT_FPS = 60;
+        final SnapshotBuffer< S > snapshots = new SnapshotBuffer< S >( pipelinedGame.createSnapshot(),
+                pipelinedGame.createSnapshot() );
 
-    /**
-     * Desired time per rendered frame
-     */
-    private final long framePeriod = ( 1000 / DEFAULT_FPS ) * 1000000L;
+        Thread renderThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                context.bind();
+                S snapshot;
+                while ( ( snapshot = snapshots.acquireRead() ) != null )
+                {
+                    frameIntervalStats.frame( System.nanoTime() );
+                    if ( rendering )
+                    {
+                        long frameStartTime = System.nanoTime();
+                        long startTime = frameStartTime;
+                        FramePhaseEvent phaseEvent = beginPhase();
+                        pipelinedGame.render( snapshot );
+                        startTime = endPhase( Phase.RENDER, startTime, phaseEvent );
 
-    /**
-     * Game object
-     */
-    private Game game;
+                        phaseEvent = beginPhase();
+                        pipelinedGame.draw();
+                        frameGovernor.recordRender( endPhase( Phase.DRAW, startTime, phaseEvent ) - frameStartTime );
+                    }
+                    snapshots.releaseRead();
+                }
+            }
+        }, "render" );
+        renderThread.start();
 
-    /**
-     * Game event list for managing game events
-     */
-    private LinkedList< GameEvent > gameEventList = new LinkedList< GameEvent >();
+        long nextTick = System.nanoTime();
+        while ( running )
+        {
+            frameGovernor.update( tickPeriod );
+            tick();
 
-    /**
-     * Number of frames that can be skipped in any one animation loop
-     */
-    private final int MAX_FRAME_SKIPS = 2;
+            /**
+             * If the ticks are running late, catch up on as many as the frame
+             * governor allows before publishing the next snapshot
+             */
+            nextTick += tickPeriod;
+            int skips = 0;
+            while ( running && System.nanoTime() - nextTick >= tickPeriod
+                    && skips < frameGovernor.getMaxCatchUpTicks() )
+            {
+                catchUpTick( ++skips );
+                nextTick += tickPeriod;
+            }
 
-    /**
-     * Number of frames with a delay of 0 ms before the animation thread yields
-     * to other running threads.
-     */
-    private final int NO_DELAYS_PER_YIELD = 16;
+            pipelinedGame.snapshot( snapshots.acquireWrite() );
+            snapshots.publish();
 
-    /**
-     * Thread is running flag
-     */
-    private boolean running;
+            /**
+             * Drop the ticks we could not catch up on if the governor says
+             * so, and never try to catch up on more than MAX_FRAME_TIME
+             */
+            long late = System.nanoTime() - nextTick;
+            if ( late > MAX_FRAME_TIME || ( late >= tickPeriod && frameGovernor.isDroppingTicks() ) )
+            {
+                nextTick += late - late % tickPeriod;
+            }
+            pace( nextTick );
+        }
 
-    /**
-     * Private constructor
-     * 
-     */
-    private GameEngine( )
-    {
         /**
-         * no code required
+         * Let the render thread finish its frame before we return
          */
-    }
-
-    @Override
-    public Object clone() throws CloneNotSupportedException
-    {
-        throw new CloneNotSupportedException();
-    }
-
-    @Override
-    public void gameEvent( GameEvent ge )
-    {
-        synchronized ( gameEventList )
+        snapshots.close();
+        try
         {
-            gameEventList.add( ge );
-            gameEventList.notify();
+            renderThread.join();
         }
+        catch ( InterruptedException exception )
+        {}
     }
 
     /**
-     * The run method is part of the Runnable interface and needs to be
-     * implemented. It goes through an update-render-draw loop to drive the game
-     * engine.
-     * 
+     * Variable timestep loop. A tick and a rendered frame are the same thing;
+     * late frames are caught up on with as many updates that are not rendered
+     * as the frame governor allows.
      */
-    public void run()
+    private void runVariableTimestep()
     {
         long beforeTime, afterTime, timeDiff, sleepTime;
         long overSleepTime = 0L;
         int noDelays = 0;
         long excess = 0L;
 
-        running = true;
         while ( running )
         {
             beforeTime = System.nanoTime();
+            frameIntervalStats.frame( beforeTime );
+            frameGovernor.update( tickPeriod );
 
             /**
-             * Check for collisions among the game objects
-             */
-            game.collisions();
-
-            /**
-             * Update all the game objects
+             * Check for collisions and update all the game objects
              */
-            game.update();
+            tick();
 
             /**
-             * Render all the game objects onto the offscreen buffer
+             * Render all the game objects onto the offscreen buffer and draw
+             * it to the screen
              */
-            game.render();
-
-            /**
-             * Draw the offscreen buffer to the screen
-             */
-            game.draw();
+            renderFrame( 0.0 );
 
             /**
              * Calculate how long we should sleep *EVERYTHING AFTER HERE MANAGES FRAMERATE*
              */
             afterTime = System.nanoTime();
             timeDiff = afterTime - beforeTime;
-            sleepTime = ( framePeriod - timeDiff ) - overSleepTime;
+            sleepTime = ( tickPeriod - timeDiff ) - overSleepTime;
 
             if ( sleepTime > 0 )
             {
                 /**
                  * some time left in this cycle
                  */
-                try
-                {
-                    Thread.sleep( sleepTime / 1000000L ); // nano -> ms
-                    noDelays = 0; // reset noDelays when sleep occurs
-                }
-                catch ( InterruptedException ex )
-                {}
+                pace( afterTime + sleepTime );
+                noDelays = 0; // reset noDelays when sleep occurs
                 overSleepTime = ( System.nanoTime() - afterTime ) - sleepTime;
             }
             else
@@ -206,7 +1203,7 @@ public class GameEngine implements Runnable, GameEventListener
                 excess -= sleepTime;
                 overSleepTime = 0L;
 
-                if ( ++noDelays >= NO_DELAYS_PER_YIELD )
+                if ( ++noDelays >= frameGovernor.getNoDelaysPerYield() )
                 {
                     /**
                      * give another thread a chance to run
@@ -222,33 +1219,289 @@ public class GameEngine implements Runnable, GameEventListener
              * required FPS.
              */
             int skips = 0;
-            while ( ( excess > framePeriod ) && ( skips < MAX_FRAME_SKIPS ) )
+            while ( running && ( excess > tickPeriod ) && ( skips < frameGovernor.getMaxCatchUpTicks() ) )
             {
-                excess -= framePeriod;
+                excess -= tickPeriod;
+                catchUpTick( ++skips );
+            }
 
-                /**
-                 * Check for collisions among the game objects
-                 */
-                game.collisions();
+            /**
+             * Forget about the updates we could not catch up on if the
+             * governor says so
+             */
+            if ( frameGovernor.isDroppingTicks() )
+            {
+                excess %= tickPeriod;
+            }
 
-                /**
-                 * Update all the game objects
-                 */
-                game.update();
-                skips++;
+        }
+    }
+
+    /**
+     * Start a flight recorder event for a frame phase
+     * 
+     * @return FramePhaseEvent
+     */
+    private FramePhaseEvent beginPhase()
+    {
+        FramePhaseEvent phaseEvent = new FramePhaseEvent();
+        phaseEvent.begin();
+        return phaseEvent;
+    }
+
+    /**
+     * Finish timing a frame phase. Records the phase in its latency histogram
+     * and commits the flight recorder event if it is being recorded.
+     * 
+     * @param phase
+     * @param startTime
+     * @param phaseEvent
+     * @return System.nanoTime() at the end of the phase
+     */
+    private long endPhase( Phase phase, long startTime, FramePhaseEvent phaseEvent )
+    {
+        long endTime = System.nanoTime();
+        phaseHistograms[ phase.ordinal() ].record( endTime - startTime );
+
+        phaseEvent.end();
+        if ( phaseEvent.shouldCommit() )
+        {
+            phaseEvent.phase = phase.name();
+            phaseEvent.tick = tickCount;
+            phaseEvent.commit();
+        }
+        return endTime;
+    }
+
+    /**
+     * Run a simulation tick that will not be rendered, to catch up on late
+     * updates
+     * 
+     * @param skip
+     */
+    private void catchUpTick( int skip )
+    {
+        CatchUpUpdateEvent catchUpEvent = new CatchUpUpdateEvent();
+        catchUpEvent.begin();
+
+        if ( !tick() )
+        {
+            return;
+        }
+        skippedFrames++;
+
+        catchUpEvent.end();
+        if ( catchUpEvent.shouldCommit() )
+        {
+            catchUpEvent.tick = tickCount;
+            catchUpEvent.skip = skip;
+            catchUpEvent.commit();
+        }
+    }
+
+    /**
+     * Wait out the rest of a frame with the frame pacer
+     * 
+     * @param deadline
+     */
+    private void pace( long deadline )
+    {
+        long startTime = System.nanoTime();
+        FramePhaseEvent phaseEvent = beginPhase();
+        framePacer.waitUntil( deadline );
+        endPhase( Phase.PACING, startTime, phaseEvent );
+    }
+
+    /**
+     * Render the game and draw it to the screen, passing the interpolation
+     * factor to games that want it
+     * 
+     * @param interpolation
+     */
+    private void renderFrame( double interpolation )
+    {
+        if ( !rendering )
+        {
+            return;
+        }
+
+        long frameStartTime = System.nanoTime();
+        long startTime = frameStartTime;
+        FramePhaseEvent phaseEvent = beginPhase();
+        if ( game instanceof InterpolatedGame )
+        {
+            ( ( InterpolatedGame ) game ).render( interpolation );
+        }
+        else
+        {
+            game.render();
+        }
+        startTime = endPhase( Phase.RENDER, startTime, phaseEvent );
+
+        phaseEvent = beginPhase();
+        game.draw();
+        frameGovernor.recordRender( endPhase( Phase.DRAW, startTime, phaseEvent ) - frameStartTime );
+    }
+
+    /**
+     * Unthrottled loop. Ticks run back to back with no pacing.
+     */
+    private void runUnthrottled()
+    {
+        while ( running )
+        {
+            frameIntervalStats.frame( System.nanoTime() );
+            tick();
+            renderFrame( 0.0 );
+        }
+    }
+
+    /**
+     * Deliver the keyboard and mouse events deferred to this tick, either from
+     * the replay or from the game context's input queue
+     * 
+     * @return boolean false if the replay ended before this tick, so the tick
+     *         must not run
+     */
+    private boolean deliverInput()
+    {
+        InputEvent inputEvent;
+
+        if ( inputReplay != null )
+        {
+            /**
+             * Live input is dropped while replaying
+             */
+            while ( context.pollInput() != null )
+            {}
+
+            /**
+             * The recording ends at the first tick the recorded game did not
+             * run, so the replay does not run it either
+             */
+            inputReplay.deliver( tickCount, context );
+            if ( inputReplay.isFinished( tickCount ) )
+            {
+                running = false;
+                return false;
+            }
+        }
+        else if ( context.isInputDeferred() )
+        {
+            while ( ( inputEvent = context.pollInput() ) != null )
+            {
+                if ( inputRecorder != null )
+                {
+                    inputRecorder.recordInput( tickCount, inputEvent );
+                }
+                GameDisplay.deliverInput( context, inputEvent );
             }
+        }
+        return true;
+    }
+
+    /**
+     * Run one simulation tick. Deliver deferred input, handle queued game
+     * events if they are handled at tick boundaries, run the timers that are
+     * due, check for collisions among the game objects, then update them.
+     * 
+     * @return boolean false if the tick did not run because the replay ended
+     */
+    private boolean tick()
+    {
+        if ( !deliverInput() )
+        {
+            return false;
+        }
+        if ( tickBoundaryEvents )
+        {
+            manageTickEvents();
+        }
+        timerWheel.advance();
+
+        long tickStartTime = System.nanoTime();
+        long startTime = tickStartTime;
+        FramePhaseEvent phaseEvent = beginPhase();
+        game.collisions();
+        startTime = endPhase( Phase.COLLISIONS, startTime, phaseEvent );
 
+        phaseEvent = beginPhase();
+        game.update();
+        frameGovernor.recordSimulation( endPhase( Phase.UPDATE, startTime, phaseEvent ) - tickStartTime );
+        tickCount++;
+        return true;
+    }
+
+    /**
+     * Hand a game event to the game
+     * 
+     * @param gameEvent
+     */
+    private void handleGameEvent( GameEvent gameEvent )
+    {
+        gameEvent.handledTime = System.nanoTime();
+        long queueWait = gameEvent.handledTime - gameEvent.queuedTime;
+        eventLatencyHistograms[ gameEvent.getType().ordinal() ].record( queueWait );
+        countHandledEvent( gameEvent.handledTime );
+        GameEventHandledEvent handledEvent = new GameEventHandledEvent();
+        handledEvent.begin();
+
+        game.manageGameEvent( gameEvent );
+
+        handledEvent.end();
+        if ( handledEvent.shouldCommit() )
+        {
+            handledEvent.type = gameEvent.getType().name();
+            handledEvent.sourceClass = ( gameEvent.getSource() != null ) ? gameEvent.getSource().getClass() : null;
+            handledEvent.queueWait = queueWait;
+            handledEvent.commit();
         }
 
         /**
-         * If we get to this point, it's because running was set to false. In
-         * that case, notify the game event manager to quit and exit the thread.
+         * The game is done with the event, so a pooled event can be reused
          */
-        synchronized ( gameEventList )
+        gameEvent.recycle();
+    }
+
+    /**
+     * Count a handled game event and close the events per second window once
+     * a second has passed
+     * 
+     * @param now
+     */
+    private void countHandledEvent( long now )
+    {
+        long handled = eventsHandled + 1;
+        eventsHandled = handled;
+
+        if ( eventRateWindowStart == 0L )
         {
-            gameEventList.notify();
+            eventRateWindowStart = now;
+            eventRateWindowCount = handled - 1;
+        }
+        else if ( now - eventRateWindowStart >= NANOS_PER_SECOND )
+        {
+            eventsPerSecond = ( double ) ( handled - eventRateWindowCount ) * NANOS_PER_SECOND
+                    / ( now - eventRateWindowStart );
+            eventRateWindowCount = handled;
+            eventRateWindowStart = now;
+        }
+    }
+
+    /**
+     * Wait for the game engine thread to stop
+     */
+    private void joinGameThread()
+    {
+        while ( gameThread.isAlive() )
+        {
+            try
+            {
+                gameThread.join();
+            }
+            catch ( InterruptedException exception )
+            {}
         }
-        return;
     }
 
     /**
@@ -260,42 +1513,64 @@ public class GameEngine implements Runnable, GameEventListener
 
         while ( true )
         {
-            synchronized ( gameEventList )
+            /**
+             * Check to see if the game engine thread has stopped running. If so
+             * then we return regardless of the state of the game event queue
+             */
+            if ( !running )
             {
-                /**
-                 * If the game event list is empty then wait for an event to
-                 * show up
-                 */
-                if ( gameEventList.isEmpty() )
-                {
-                    try
-                    {
-                        gameEventList.wait();
-                    }
-                    catch ( InterruptedException exception )
-                    {}
-                }
-
-                /**
-                 * Check to see if the game engine thread has stopped running.
-                 * If so then we return regardless of the state of the game
-                 * event list
-                 */
-                if ( !running )
-                {
-                    break;
-                }
+                break;
+            }
 
-                /**
-                 * Fetch the game event
-                 */
-                gameEvent = gameEventList.removeFirst();
+            /**
+             * Fetch the game event, from the overflow list once the queue is
+             * empty. If there is none then wait for an event to show up.
+             */
+            gameEvent = gameEventQueue.poll();
+            if ( gameEvent == null && !eventOverflowList.isEmpty() )
+            {
+                gameEvent = eventOverflowList.remove( 0 );
+            }
+            if ( gameEvent == null )
+            {
+                gameEventQueue.await();
+                continue;
             }
 
             /**
              * Deal with the game event
              */
-            game.manageGameEvent( gameEvent );
+            handleGameEvent( gameEvent );
+        }
+    }
+
+    /**
+     * Handle the game events queued before this tick boundary in one batch
+     */
+    private void manageTickEvents()
+    {
+        /**
+         * Take only what is queued now. Events queued while the batch is
+         * handled wait for the next tick boundary. The size counts slots a
+         * producer claimed but has not published yet, so stop at the first
+         * of those, it is taken at the next tick boundary.
+         */
+        GameEvent queued;
+        for ( int count = gameEventQueue.size(); count > 0 && ( queued = gameEventQueue.poll() ) != null; count-- )
+        {
+            tickEventList.add( queued );
+        }
+        tickEventList.addAll( eventOverflowList );
+        eventOverflowList.clear();
+        if ( eventCoalescing )
+        {
+            eventCoalescer.coalesce( tickEventList );
+        }
+
+        for ( GameEvent gameEvent : tickEventList )
+        {
+            handleGameEvent( gameEvent );
         }
+        tickEventList.clear();
     }
 }
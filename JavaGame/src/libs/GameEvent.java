@@ -4,6 +4,13 @@ package libs;
  * Game event class. This class is used to pass async messages back to the main
  * thread.
  * 
+ * Game events can be created with new, or obtained from the pool of the
+ * calling thread's game context with obtain(). The game engine returns a
+ * pooled event to its context's pool once the game has handled it, so a game
+ * must not keep a reference to a game event after manageGameEvent returns. A
+ * numeric payload such as a score can be passed as a primitive value instead
+ * of a boxed attachment.
+ * 
  * @author williamhooper
  */
 
@@ -20,9 +27,119 @@ public class GameEvent
         AddFirst, AddLast, End, Help, Life, Menu, NextLevel, Quit, Remove, Score, Start, Pause
     };
 
+    /**
+     * Pool of recycled game events. Each game context has its own, so games
+     * running side by side do not share a lock.
+     * 
+     * @author williamhooper
+     * 
+     */
+    static final class Pool
+    {
+        /**
+         * Most game events kept in the pool
+         */
+        private static final int POOL_CAPACITY = 256;
+
+        private final GameEvent [ ] events = new GameEvent [ POOL_CAPACITY ];
+        private int size = 0;
+
+        /**
+         * Put a cleared game event back in the pool, unless it is already in
+         * it or the pool is full
+         * 
+         * @param ge
+         */
+        synchronized void give( GameEvent ge )
+        {
+            if ( ge.inPool )
+            {
+                return;
+            }
+
+            ge.clear();
+            if ( size < events.length )
+            {
+                ge.inPool = true;
+                events[ size++ ] = ge;
+            }
+        }
+
+        /**
+         * Take a game event from the pool
+         * 
+         * @return GameEvent, null if the pool is empty
+         */
+        synchronized GameEvent take()
+        {
+            if ( size == 0 )
+            {
+                return null;
+            }
+
+            GameEvent ge = events[ --size ];
+            events[ size ] = null;
+            ge.inPool = false;
+            return ge;
+        }
+    }
+
+    /**
+     * Obtain a game event from the pool of the calling thread's game context
+     * 
+     * @param source
+     * @param type
+     * @param attachment
+     * @return GameEvent
+     */
+    public static GameEvent obtain( Object source, GameEventType type, Object attachment )
+    {
+        GameEvent ge = GameContext.current().getGameEventPool().take();
+        if ( ge == null )
+        {
+            ge = new GameEvent( source, type, attachment );
+            ge.pooled = true;
+        }
+        else
+        {
+            ge.source = source;
+            ge.type = type;
+            ge.attachment = attachment;
+        }
+        return ge;
+    }
+
+    /**
+     * Obtain a game event with a primitive value from the pool
+     * 
+     * @param source
+     * @param type
+     * @param value
+     * @return GameEvent
+     */
+    public static GameEvent obtain( Object source, GameEventType type, long value )
+    {
+        GameEvent ge = obtain( source, type, null );
+        ge.value = value;
+        return ge;
+    }
+
     private Object attachment;
+    private boolean inPool;
+    private boolean pooled;
     private Object source;
     private GameEventType type;
+    private long value;
+
+    /**
+     * System.nanoTime() when the game engine started handling the event
+     */
+    long handledTime;
+
+    /**
+     * System.nanoTime() when the game engine queued the event
+     */
+    long queuedTime;
 
     /**
      * Constructor
@@ -48,6 +165,28 @@ public class GameEvent
         return attachment;
     }
 
+    /**
+     * Get the System.nanoTime() when the game engine started handling the
+     * event, 0 if it has not been handled yet
+     * 
+     * @return long
+     */
+    public long getHandledTime()
+    {
+        return handledTime;
+    }
+
+    /**
+     * Get the System.nanoTime() when the event was dispatched to the game
+     * engine, 0 if it has not been dispatched yet
+     * 
+     * @return long
+     */
+    public long getQueuedTime()
+    {
+        return queuedTime;
+    }
+
     /**
      * Get the source of the game event
      * 
@@ -67,4 +206,52 @@ public class GameEvent
     {
         return type;
     }
+
+    /**
+     * Get the primitive event value
+     * 
+     * @return long
+     */
+    public long getValue()
+    {
+        return value;
+    }
+
+    /**
+     * Set the primitive event value
+     * 
+     * @param value
+     */
+    void setValue( long value )
+    {
+        this.value = value;
+    }
+
+    /**
+     * Return a pooled game event to the pool of the calling thread's game
+     * context. Does nothing for a game event created with new, or one already
+     * in the pool.
+     * 
+     */
+    void recycle()
+    {
+        if ( !pooled )
+        {
+            return;
+        }
+        GameContext.current().getGameEventPool().give( this );
+    }
+
+    /**
+     * Clear the event before it goes back to the pool
+     */
+    private void clear()
+    {
+        source = null;
+        type = null;
+        attachment = null;
+        value = 0L;
+        queuedTime = 0L;
+        handledTime = 0L;
+    }
 }
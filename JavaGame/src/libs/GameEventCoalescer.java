@@ -0,0 +1,105 @@
+package libs;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import libs.GameEvent.GameEventType;
+
+/**
+ * Game event coalescer. Shrinks a batch of game events handled at one tick
+ * boundary: the primitive values of all Score events without an attachment
+ * are added up into the first of them, and a Remove or AddLast event for an
+ * attachment that the batch has already removed or added is dropped. Events
+ * that are merged away are recycled.
+ * 
+ * @author williamhooper
+ */
+class GameEventCoalescer
+{
+    /**
+     * Last Remove or AddLast type seen for each attachment in the batch
+     */
+    private final IdentityHashMap< Object, GameEventType > lastChange = new IdentityHashMap< Object, GameEventType >();
+
+    /**
+     * Number of game events merged away
+     */
+    private long coalescedCount;
+
+    /**
+     * Coalesce a batch of game events in place, keeping the order of the
+     * events that are left
+     * 
+     * @param batch
+     */
+    void coalesce( ArrayList< GameEvent > batch )
+    {
+        GameEvent score = null;
+        int kept = 0;
+
+        for ( int index = 0; index < batch.size(); index++ )
+        {
+            GameEvent ge = batch.get( index );
+            boolean keep = true;
+
+            switch ( ge.getType() )
+            {
+                case Score:
+                    if ( ge.getAttachment() == null )
+                    {
+                        if ( score == null )
+                        {
+                            score = ge;
+                        }
+                        else
+                        {
+                            score.setValue( score.getValue() + ge.getValue() );
+                            keep = false;
+                        }
+                    }
+                    break;
+
+                case Remove:
+                case AddLast:
+                    /**
+                     * Only a repeat of the last change to the attachment is a
+                     * duplicate; remove, add, remove must all happen
+                     */
+                    if ( ge.getAttachment() != null )
+                    {
+                        keep = lastChange.put( ge.getAttachment(), ge.getType() ) != ge.getType();
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+
+            if ( keep )
+            {
+                batch.set( kept++, ge );
+            }
+            else
+            {
+                coalescedCount++;
+                ge.recycle();
+            }
+        }
+
+        while ( batch.size() > kept )
+        {
+            batch.remove( batch.size() - 1 );
+        }
+        lastChange.clear();
+    }
+
+    /**
+     * Return the number of game events merged away
+     * 
+     * @return long
+     */
+    long getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+}
@@ -1,6 +1,9 @@
 package libs;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+
+import libs.GameEvent.GameEventType;
 
 /**
  * Game Event Dispatcher. For the game engine library there will typically only
@@ -8,6 +11,14 @@ import java.util.ArrayList;
  * listeners is included more as an example of how multiple listeners would be
  * implemented.
  * 
+ * Each game context has its own game event dispatcher; the static methods
+ * work on the dispatcher of the context bound to the calling thread.
+ * 
+ * Listeners can subscribe to all game event types or only to some. The
+ * dispatcher keeps an array of listeners per game event type and replaces the
+ * arrays when a listener is added, so dispatching an event takes no lock and
+ * only reaches the listeners subscribed to its type.
+ * 
  * @author williamhooper
  * 
  */
@@ -15,18 +26,24 @@ import java.util.ArrayList;
 public class GameEventDispatcher
 {
     /**
-     * List of game listeners
+     * Add a game listener for every game event type
+     * 
+     * @param gel
      */
-    private static ArrayList< GameEventListener > gameEventListeners = new ArrayList< GameEventListener >();
+    public static void addGameEventListener( GameEventListener gel )
+    {
+        GameContext.current().getGameEventDispatcher().add( gel, GameEventType.values() );
+    }
 
     /**
-     * Add a game listener
+     * Add a game listener for the given game event types
      * 
      * @param gel
+     * @param types
      */
-    public static synchronized void addGameEventListener( GameEventListener gel )
+    public static void addGameEventListener( GameEventListener gel, GameEventType... types )
     {
-        gameEventListeners.add( gel );
+        GameContext.current().getGameEventDispatcher().add( gel, types );
     }
 
     /**
@@ -34,23 +51,35 @@ public class GameEventDispatcher
      * 
      * @param event
      */
-    public static synchronized void dispatchEvent( GameEvent event )
+    public static void dispatchEvent( GameEvent event )
     {
-        for ( GameEventListener listener : gameEventListeners )
-        {
-            listener.gameEvent( event );
-        }
+        GameContext.current().getGameEventDispatcher().dispatch( event );
     }
 
     /**
-     * Private constructor
+     * Empty listener array for game event types nobody subscribed to
+     */
+    private static final GameEventListener [ ] NO_LISTENERS = new GameEventListener [ 0 ];
+
+    /**
+     * Game listeners for each game event type. The map and its arrays are
+     * never changed once published; adding a listener publishes a new map.
+     */
+    private volatile EnumMap< GameEventType, GameEventListener [ ] > gameEventListeners;
+
+    /**
+     * Package constructor, game event dispatchers are created by game contexts
      * 
      */
-    private GameEventDispatcher( )
+    GameEventDispatcher( )
     {
-        /**
-         * no code required
-         */
+        EnumMap< GameEventType, GameEventListener [ ] > listeners = new EnumMap< GameEventType, GameEventListener [ ] >(
+                GameEventType.class );
+        for ( GameEventType type : GameEventType.values() )
+        {
+            listeners.put( type, NO_LISTENERS );
+        }
+        gameEventListeners = listeners;
     }
 
     @Override
@@ -58,4 +87,48 @@ public class GameEventDispatcher
     {
         throw new CloneNotSupportedException();
     }
+
+    /**
+     * Add a game listener for the given game event types to this dispatcher.
+     * A listener is only added once per type: subscribing it again to a type
+     * it already listens to is ignored, so it never receives an event twice.
+     * 
+     * @param gel
+     * @param types
+     */
+    synchronized void add( GameEventListener gel, GameEventType... types )
+    {
+        if ( gel == null )
+        {
+            throw new IllegalArgumentException( "Game event listener must not be null" );
+        }
+
+        EnumMap< GameEventType, GameEventListener [ ] > listeners = new EnumMap< GameEventType, GameEventListener [ ] >(
+                gameEventListeners );
+        for ( GameEventType type : types )
+        {
+            GameEventListener [ ] typeListeners = listeners.get( type );
+            if ( !Arrays.asList( typeListeners ).contains( gel ) )
+            {
+                typeListeners = Arrays.copyOf( typeListeners, typeListeners.length + 1 );
+                typeListeners[ typeListeners.length - 1 ] = gel;
+                listeners.put( type, typeListeners );
+            }
+        }
+        gameEventListeners = listeners;
+    }
+
+    /**
+     * Dispatch a game event to the listeners of this dispatcher subscribed to
+     * its type
+     * 
+     * @param event
+     */
+    void dispatch( GameEvent event )
+    {
+        for ( GameEventListener listener : gameEventListeners.get( event.getType() ) )
+        {
+            listener.gameEvent( event );
+        }
+    }
 }
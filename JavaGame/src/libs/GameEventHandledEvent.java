@@ -0,0 +1,33 @@
+package libs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for a game event handled by the game engine
+ * 
+ * @author williamhooper
+ */
+@Name( "libs.GameEventHandled" )
+@Label( "Game Event Handled" )
+@Category( { "Game Engine" } )
+@Description( "Game event passed to Game.manageGameEvent()" )
+@StackTrace( false )
+public class GameEventHandledEvent extends Event
+{
+    @Label( "Type" )
+    String type;
+
+    @Label( "Source Class" )
+    Class< ? > sourceClass;
+
+    @Label( "Queue Wait" )
+    @Description( "Time the game event spent in the game event queue" )
+    @Timespan( Timespan.NANOSECONDS )
+    long queueWait;
+}
@@ -0,0 +1,421 @@
+package libs;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Game event queue. A bounded, preallocated, lock-free ring buffer for many
+ * threads queuing game events and a single thread taking them off. Producers
+ * claim a slot with a compare and set on the tail and publish it through the
+ * slot's sequence number, so queuing an event takes no lock and allocates
+ * nothing.
+ * 
+ * When the queue is full a producer waits for room using the wait strategy.
+ * The queue keeps backpressure statistics: how often producers found it full,
+ * how long they waited, and the deepest the queue has been.
+ * 
+ * @author williamhooper
+ */
+public class GameEventQueue
+{
+    /**
+     * How a thread waits for the queue to fill or drain
+     * 
+     * @author williamhooper
+     * 
+     */
+    public enum WaitStrategy
+    {
+        /**
+         * Spin. Lowest latency, but keeps a core busy while waiting.
+         */
+        SPIN
+        {
+            @Override
+            void idle()
+            {
+                Thread.onSpinWait();
+            }
+        },
+
+        /**
+         * Yield the processor between checks
+         */
+        YIELD
+        {
+            @Override
+            void idle()
+            {
+                Thread.yield();
+            }
+        },
+
+        /**
+         * Park the thread. Uses the least CPU time. A parked consumer is
+         * woken as soon as an event is queued, and a parked producer as soon
+         * as the consumer frees a slot.
+         */
+        PARK
+        {
+            @Override
+            void idle()
+            {
+                LockSupport.parkNanos( PARK_NANOS );
+            }
+        };
+
+        /**
+         * Wait once before checking the queue again
+         */
+        abstract void idle();
+    }
+
+    /**
+     * Longest time a parked thread sleeps before checking the queue again
+     */
+    private static final long PARK_NANOS = 1000000L;
+
+    private final GameEvent [ ] buffer;
+    private final AtomicLong blockedTime;
+    private volatile boolean closed;
+    private final AtomicLong fullCount;
+    private volatile long head;
+    private final AtomicLong highWaterMark;
+    private final int mask;
+    private volatile Thread parkedConsumer;
+    private final AtomicInteger parkedProducerCount = new AtomicInteger();
+    private final ConcurrentLinkedQueue< Thread > parkedProducers = new ConcurrentLinkedQueue< Thread >();
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Constructor
+     * 
+     * @param capacity
+     *            number of events the queue holds, must be a power of two
+     * @param waitStrategy
+     */
+    public GameEventQueue( int capacity, WaitStrategy waitStrategy )
+    {
+        if ( capacity <= 0 || Integer.bitCount( capacity ) != 1 )
+        {
+            throw new IllegalArgumentException( "Capacity must be a power of two" );
+        }
+        if ( waitStrategy == null )
+        {
+            throw new IllegalArgumentException( "Wait strategy must not be null" );
+        }
+
+        this.waitStrategy = waitStrategy;
+        buffer = new GameEvent [ capacity ];
+        mask = capacity - 1;
+        sequences = new AtomicLongArray( capacity );
+        for ( int index = 0; index < capacity; index++ )
+        {
+            sequences.set( index, index );
+        }
+        tail = new AtomicLong();
+        blockedTime = new AtomicLong();
+        fullCount = new AtomicLong();
+        highWaterMark = new AtomicLong();
+    }
+
+    /**
+     * Wait for an event to be queued, as the consumer. Returns after one wait
+     * of the wait strategy or as soon as the consumer is woken.
+     * 
+     */
+    public void await()
+    {
+        if ( waitStrategy == WaitStrategy.PARK )
+        {
+            /**
+             * Announce ourselves before checking the queue one last time, so
+             * a producer publishing now is sure to see us and unpark us
+             */
+            parkedConsumer = Thread.currentThread();
+            if ( isEmpty() )
+            {
+                LockSupport.parkNanos( this, PARK_NANOS );
+            }
+            parkedConsumer = null;
+        }
+        else
+        {
+            waitStrategy.idle();
+        }
+    }
+
+    /**
+     * Close the queue. Events queued after the queue is closed are dropped, and
+     * producers waiting for room give up.
+     * 
+     */
+    public void close()
+    {
+        closed = true;
+        wakeConsumer();
+
+        Thread producer;
+        while ( ( producer = parkedProducers.poll() ) != null )
+        {
+            LockSupport.unpark( producer );
+        }
+    }
+
+    /**
+     * Return the total time in nanoseconds producers spent waiting for room
+     * 
+     * @return long
+     */
+    public long getBlockedTime()
+    {
+        return blockedTime.get();
+    }
+
+    /**
+     * Return the number of events the queue holds
+     * 
+     * @return int
+     */
+    public int getCapacity()
+    {
+        return buffer.length;
+    }
+
+    /**
+     * Return the number of times a producer found the queue full
+     * 
+     * @return long
+     */
+    public long getFullCount()
+    {
+        return fullCount.get();
+    }
+
+    /**
+     * Return the largest number of events the queue has held
+     * 
+     * @return long
+     */
+    public long getHighWaterMark()
+    {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Return the wait strategy
+     * 
+     * @return WaitStrategy
+     */
+    public WaitStrategy getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+
+    /**
+     * Return true if the queue is empty
+     * 
+     * @return boolean
+     */
+    public boolean isEmpty()
+    {
+        return sequences.get( ( int ) ( head & mask ) ) != head + 1;
+    }
+
+    /**
+     * Queue a game event if there is room
+     * 
+     * @param ge
+     * @return boolean true if the event was queued, false if the queue is full
+     *         or closed
+     */
+    public boolean offer( GameEvent ge )
+    {
+        if ( closed )
+        {
+            return false;
+        }
+
+        long position = tail.get();
+        while ( true )
+        {
+            int index = ( int ) ( position & mask );
+            long difference = sequences.get( index ) - position;
+            if ( difference == 0 )
+            {
+                if ( tail.compareAndSet( position, position + 1 ) )
+                {
+                    break;
+                }
+                position = tail.get();
+            }
+            else if ( difference < 0 )
+            {
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+
+        /**
+         * Publish the event through the slot sequence
+         */
+        int index = ( int ) ( position & mask );
+        buffer[ index ] = ge;
+        sequences.set( index, position + 1 );
+
+        long depth = position + 1 - head;
+        long mark = highWaterMark.get();
+        while ( depth > mark && !highWaterMark.compareAndSet( mark, depth ) )
+        {
+            mark = highWaterMark.get();
+        }
+
+        Thread consumer = parkedConsumer;
+        if ( consumer != null )
+        {
+            LockSupport.unpark( consumer );
+        }
+        return true;
+    }
+
+    /**
+     * Take the next game event off the queue, as the consumer
+     * 
+     * @return GameEvent, null if the queue is empty
+     */
+    public GameEvent poll()
+    {
+        long position = head;
+        int index = ( int ) ( position & mask );
+        if ( sequences.get( index ) != position + 1 )
+        {
+            return null;
+        }
+
+        GameEvent ge = buffer[ index ];
+        buffer[ index ] = null;
+        sequences.set( index, position + buffer.length );
+        head = position + 1;
+
+        /**
+         * The slot is free, wake a producer waiting for room
+         */
+        if ( parkedProducerCount.get() > 0 )
+        {
+            Thread producer = parkedProducers.poll();
+            if ( producer != null )
+            {
+                LockSupport.unpark( producer );
+            }
+        }
+        return ge;
+    }
+
+    /**
+     * Queue a game event, waiting for room if the queue is full
+     * 
+     * @param ge
+     * @return boolean true if the event was queued, false if the queue was
+     *         closed
+     */
+    public boolean put( GameEvent ge )
+    {
+        if ( offer( ge ) )
+        {
+            return true;
+        }
+        else if ( closed )
+        {
+            return false;
+        }
+
+        fullCount.incrementAndGet();
+        long startTime = System.nanoTime();
+        boolean queued;
+        while ( !( queued = offer( ge ) ) && !closed )
+        {
+            awaitRoom();
+        }
+        blockedTime.addAndGet( System.nanoTime() - startTime );
+        return queued;
+    }
+
+    /**
+     * Return the number of events in the queue. This includes events a
+     * producer is still publishing, which poll does not return yet.
+     * 
+     * @return int
+     */
+    public int size()
+    {
+        long size = tail.get() - head;
+        return ( int ) Math.max( 0L, Math.min( size, buffer.length ) );
+    }
+
+    /**
+     * Return true if the queue is closed
+     * 
+     * @return boolean
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Wake the consumer if it is waiting in await()
+     * 
+     */
+    public void wakeConsumer()
+    {
+        Thread consumer = parkedConsumer;
+        if ( consumer != null )
+        {
+            LockSupport.unpark( consumer );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "size %d of %d, high water %d, full %d times, blocked %.3f ms", size(), getCapacity(),
+                getHighWaterMark(), getFullCount(), getBlockedTime() / 1e6 );
+    }
+
+    /**
+     * Wait for room, as a producer that found the queue full. Returns after one
+     * wait of the wait strategy or as soon as the producer is woken.
+     */
+    private void awaitRoom()
+    {
+        if ( waitStrategy == WaitStrategy.PARK )
+        {
+            /**
+             * Announce ourselves before checking the queue one last time, so
+             * the consumer freeing a slot now is sure to see us and unpark us
+             */
+            Thread producer = Thread.currentThread();
+            parkedProducerCount.incrementAndGet();
+            parkedProducers.add( producer );
+            long position = tail.get();
+            if ( sequences.get( ( int ) ( position & mask ) ) < position && !closed )
+            {
+                LockSupport.parkNanos( this, PARK_NANOS );
+            }
+            parkedProducers.remove( producer );
+            parkedProducerCount.decrementAndGet();
+        }
+        else
+        {
+            waitStrategy.idle();
+        }
+    }
+}
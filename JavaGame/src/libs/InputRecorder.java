@@ -0,0 +1,227 @@
+package libs;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Input recorder. Records every keyboard and mouse event delivered to the game
+ * and every game event dispatched, each with the game engine tick it happened
+ * on, into a compact binary log that InputReplay can play back.
+ * 
+ * The log starts with a header holding the random seed of the game context.
+ * Each record then starts with a kind byte and the number of ticks since the
+ * previous record, written as a variable length integer, followed by the
+ * fields of the event.
+ * 
+ * @author williamhooper
+ */
+public class InputRecorder
+{
+    /**
+     * Log file magic number and version
+     */
+    static final int MAGIC = 0x4A47524C;
+    static final int VERSION = 1;
+
+    /**
+     * Record kinds
+     */
+    static final byte END = 0;
+    static final byte KEYBOARD = 1;
+    static final byte MOUSE = 2;
+    static final byte GAME_EVENT = 3;
+
+    private boolean closed;
+    private long lastTick;
+    private DataOutputStream out;
+    private long seed;
+
+    /**
+     * Constructor
+     * 
+     * @param stream
+     * @param seed
+     *            random seed the recorded game context is started with
+     * @throws IOException
+     */
+    public InputRecorder( OutputStream stream, long seed ) throws IOException
+    {
+        this.seed = seed;
+        out = new DataOutputStream( new BufferedOutputStream( stream ) );
+        out.writeInt( MAGIC );
+        out.writeByte( VERSION );
+        out.writeLong( seed );
+    }
+
+    /**
+     * Write the end of log record and close the log
+     * 
+     * @param tick
+     */
+    public synchronized void close( long tick )
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        try
+        {
+            writeHeader( END, tick );
+            out.close();
+            closed = true;
+        }
+        catch ( IOException ioe )
+        {
+            throw new RuntimeException( ioe.getMessage() );
+        }
+    }
+
+    /**
+     * Return the random seed
+     * 
+     * @return long
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Record a game event
+     * 
+     * @param tick
+     * @param ge
+     */
+    public synchronized void recordGameEvent( long tick, GameEvent ge )
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        try
+        {
+            writeHeader( GAME_EVENT, tick );
+            out.writeByte( ge.getType().ordinal() );
+            out.writeInt( sourceId( ge ) );
+            writeVarLong( attachmentValue( ge ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new RuntimeException( ioe.getMessage() );
+        }
+    }
+
+    /**
+     * Record a keyboard or mouse event
+     * 
+     * @param tick
+     * @param ie
+     */
+    public synchronized void recordInput( long tick, InputEvent ie )
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        try
+        {
+            if ( ie instanceof KeyEvent )
+            {
+                KeyEvent ke = ( KeyEvent ) ie;
+                writeHeader( KEYBOARD, tick );
+                writeVarLong( ke.getID() );
+                writeVarLong( ke.getModifiersEx() );
+                writeVarLong( ke.getKeyCode() );
+                out.writeChar( ke.getKeyChar() );
+            }
+            else if ( ie instanceof MouseEvent )
+            {
+                MouseEvent me = ( MouseEvent ) ie;
+                writeHeader( MOUSE, tick );
+                writeVarLong( me.getID() );
+                writeVarLong( me.getModifiersEx() );
+                writeVarLong( zigZag( me.getX() ) );
+                writeVarLong( zigZag( me.getY() ) );
+                writeVarLong( me.getClickCount() );
+                writeVarLong( me.getButton() );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new RuntimeException( ioe.getMessage() );
+        }
+    }
+
+    /**
+     * Return the value recorded for a game event. A number attachment is
+     * recorded as its value, otherwise the primitive event value is recorded.
+     * 
+     * @param ge
+     * @return long
+     */
+    static long attachmentValue( GameEvent ge )
+    {
+        return ( ge.getAttachment() instanceof Number ) ? ( ( Number ) ge.getAttachment() ).longValue() : ge.getValue();
+    }
+
+    /**
+     * Return the identifier recorded for a game event's source, the hash of
+     * its class name
+     * 
+     * @param ge
+     * @return int
+     */
+    static int sourceId( GameEvent ge )
+    {
+        return ( ge.getSource() != null ) ? ge.getSource().getClass().getName().hashCode() : 0;
+    }
+
+    /**
+     * Zig-zag encode a signed value so small negative values stay short
+     * 
+     * @param value
+     * @return long
+     */
+    static long zigZag( long value )
+    {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    /**
+     * Write a record kind and the number of ticks since the last record
+     * 
+     * @param kind
+     * @param tick
+     * @throws IOException
+     */
+    private void writeHeader( byte kind, long tick ) throws IOException
+    {
+        out.writeByte( kind );
+        writeVarLong( tick - lastTick );
+        lastTick = tick;
+    }
+
+    /**
+     * Write an unsigned variable length integer, 7 bits per byte
+     * 
+     * @param value
+     * @throws IOException
+     */
+    private void writeVarLong( long value ) throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte( ( int ) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( ( int ) value );
+    }
+}
@@ -0,0 +1,280 @@
+package libs;
+
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Input replay. Plays back a log written by InputRecorder: keyboard and mouse
+ * events are delivered to the game at the tick they were recorded on, and the
+ * game events the game dispatches are checked against the recorded ones to
+ * detect where the replayed simulation diverges from the recording.
+ * 
+ * @author williamhooper
+ */
+public class InputReplay
+{
+    /**
+     * Component used as the source of replayed keyboard and mouse events
+     */
+    private static Component eventSource;
+
+    private long divergenceTick;
+    private long endTick;
+    private ArrayDeque< long [ ] > expectedGameEvents;
+    private DataInputStream in;
+    private long nextTick;
+    private byte nextKind;
+    private long seed;
+
+    /**
+     * Input read for the tick being delivered, kept between ticks so a replay
+     * makes no garbage per tick
+     */
+    private final ArrayDeque< InputEvent > tickInput = new ArrayDeque< InputEvent >();
+
+    /**
+     * Constructor
+     * 
+     * @param stream
+     * @throws IOException
+     */
+    public InputReplay( InputStream stream ) throws IOException
+    {
+        in = new DataInputStream( new BufferedInputStream( stream ) );
+        if ( in.readInt() != InputRecorder.MAGIC || in.readByte() != InputRecorder.VERSION )
+        {
+            throw new IOException( "Not an input recording" );
+        }
+        seed = in.readLong();
+
+        divergenceTick = -1;
+        endTick = -1;
+        expectedGameEvents = new ArrayDeque< long [ ] >();
+        nextTick = 0;
+        readHeader();
+    }
+
+    /**
+     * Deliver the keyboard and mouse events recorded for a tick to the
+     * listeners of a game context
+     * 
+     * @param tick
+     * @param context
+     */
+    public void deliver( long tick, GameContext context )
+    {
+        /**
+         * Read every record for the tick before delivering any input, so the
+         * game events the input causes can be checked against the recording.
+         * The input is delivered without holding the lock since the listeners
+         * dispatch game events. Only the game engine thread delivers, so the
+         * input deque is reused from tick to tick.
+         */
+        synchronized ( this )
+        {
+            readTick( tick, tickInput );
+        }
+
+        try
+        {
+            InputEvent inputEvent;
+            while ( ( inputEvent = tickInput.poll() ) != null )
+            {
+                GameDisplay.deliverInput( context, inputEvent );
+            }
+        }
+        finally
+        {
+            tickInput.clear();
+        }
+    }
+
+    /**
+     * Return the first tick where the replayed game events differ from the
+     * recording, or -1 if they have matched so far
+     * 
+     * @return long
+     */
+    public synchronized long getDivergenceTick()
+    {
+        return divergenceTick;
+    }
+
+    /**
+     * Return the random seed the recorded game context was started with
+     * 
+     * @return long
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Return true once the replay has reached the last recorded tick
+     * 
+     * @param tick
+     * @return boolean
+     */
+    public synchronized boolean isFinished( long tick )
+    {
+        return endTick != -1 && tick >= endTick;
+    }
+
+    /**
+     * Check a game event dispatched by the replayed game against the recording
+     * 
+     * @param tick
+     * @param ge
+     */
+    public synchronized void verifyGameEvent( long tick, GameEvent ge )
+    {
+        if ( divergenceTick != -1 )
+        {
+            return;
+        }
+
+        long [ ] expected = expectedGameEvents.poll();
+        if ( expected == null || expected[ 0 ] != tick || expected[ 1 ] != ge.getType().ordinal()
+                || expected[ 2 ] != InputRecorder.sourceId( ge ) || expected[ 3 ] != InputRecorder.attachmentValue( ge ) )
+        {
+            divergenceTick = tick;
+        }
+    }
+
+    /**
+     * Return the component used as the source of replayed events
+     * 
+     * @return Component
+     */
+    private static synchronized Component getEventSource()
+    {
+        if ( eventSource == null )
+        {
+            eventSource = new Canvas();
+        }
+        return eventSource;
+    }
+
+    /**
+     * Decode a zig-zag encoded value
+     * 
+     * @param value
+     * @return long
+     */
+    private static long unZigZag( long value )
+    {
+        return ( value >>> 1 ) ^ -( value & 1 );
+    }
+
+    /**
+     * Read the kind and tick of the next record. A log that ends without an
+     * end record is treated as if it had one.
+     * 
+     * @throws IOException
+     */
+    private void readHeader() throws IOException
+    {
+        try
+        {
+            nextKind = in.readByte();
+            nextTick += readVarLong();
+        }
+        catch ( EOFException eofe )
+        {
+            nextKind = InputRecorder.END;
+        }
+    }
+
+    /**
+     * Read the records up to and including a tick, collecting the input to
+     * deliver and the game events to expect
+     * 
+     * @param tick
+     * @param tickInput
+     */
+    private void readTick( long tick, ArrayDeque< InputEvent > tickInput )
+    {
+        try
+        {
+            while ( endTick == -1 && nextTick <= tick )
+            {
+                switch ( nextKind )
+                {
+                    case InputRecorder.END:
+                        endTick = nextTick;
+                        in.close();
+                        break;
+
+                    case InputRecorder.KEYBOARD:
+                        int keyId = ( int ) readVarLong();
+                        int keyModifiers = ( int ) readVarLong();
+                        int keyCode = ( int ) readVarLong();
+                        char keyChar = in.readChar();
+                        tickInput.add( new KeyEvent( getEventSource(), keyId, tick, keyModifiers, keyCode, keyChar ) );
+                        break;
+
+                    case InputRecorder.MOUSE:
+                        int mouseId = ( int ) readVarLong();
+                        int mouseModifiers = ( int ) readVarLong();
+                        int x = ( int ) unZigZag( readVarLong() );
+                        int y = ( int ) unZigZag( readVarLong() );
+                        int clickCount = ( int ) readVarLong();
+                        int button = ( int ) readVarLong();
+                        tickInput.add( new MouseEvent( getEventSource(), mouseId, tick, mouseModifiers, x, y,
+                                clickCount, false, button ) );
+                        break;
+
+                    case InputRecorder.GAME_EVENT:
+                        long type = in.readByte();
+                        long source = in.readInt();
+                        long value = readVarLong();
+                        expectedGameEvents.add( new long [ ] { nextTick, type, source, value } );
+                        break;
+
+                    default:
+                        throw new IOException( "Corrupt input recording" );
+                }
+
+                if ( endTick == -1 )
+                {
+                    readHeader();
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new RuntimeException( ioe.getMessage() );
+        }
+    }
+
+    /**
+     * Read an unsigned variable length integer
+     * 
+     * @return long
+     * @throws IOException
+     */
+    private long readVarLong() throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            value |= ( long ) ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+        return value;
+    }
+}
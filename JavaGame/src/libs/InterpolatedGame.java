@@ -0,0 +1,21 @@
+package libs;
+
+/**
+ * Game interface for games that render with an interpolation factor. When the
+ * game engine runs with a fixed timestep the time between the last simulation
+ * tick and the rendered frame is passed to the game as a fraction of a tick, so
+ * the game can draw its objects between their previous and current positions.
+ * 
+ * @author williamhooper
+ */
+public interface InterpolatedGame extends Game
+{
+    /**
+     * Render graphics onto the offscreen buffer
+     * 
+     * @param interpolation
+     *            fraction of a tick, from 0 up to but not including 1, elapsed
+     *            since the last update
+     */
+    abstract public void render( double interpolation );
+}
@@ -0,0 +1,195 @@
+package libs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds. Values are counted in buckets whose
+ * width grows with the value, 16 buckets per power of two, so any recorded
+ * value is reported to within about 6% using a fixed amount of memory.
+ * Recording does not allocate and is meant to be done from a single thread,
+ * while any thread can read the histogram.
+ * 
+ * @author williamhooper
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of bits of a value that are kept exactly
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of buckets per power of two above 2^SUB_BUCKET_BITS
+     */
+    private static final int SUB_BUCKET_HALF = 1 << ( SUB_BUCKET_BITS - 1 );
+
+    /**
+     * Enough buckets for any positive long value
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKET_HALF * ( 64 - SUB_BUCKET_BITS ) + 2 * SUB_BUCKET_HALF;
+
+    private AtomicLongArray buckets;
+    private AtomicLong count;
+    private AtomicLong max;
+    private AtomicLong total;
+
+    /**
+     * Constructor
+     * 
+     */
+    public LatencyHistogram( )
+    {
+        buckets = new AtomicLongArray( BUCKET_COUNT );
+        count = new AtomicLong();
+        max = new AtomicLong();
+        total = new AtomicLong();
+    }
+
+    /**
+     * Return the number of recorded values
+     * 
+     * @return long
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Return the largest recorded value
+     * 
+     * @return long
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Return the mean of the recorded values
+     * 
+     * @return double
+     */
+    public double getMean()
+    {
+        long n = count.get();
+        return ( n == 0 ) ? 0.0 : ( double ) total.get() / n;
+    }
+
+    /**
+     * Return the value at the given percentile, for example 99.9. The value
+     * returned is the upper end of the bucket the percentile falls in, capped
+     * at the largest recorded value.
+     * 
+     * @param percentile
+     * @return long
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        long n = count.get();
+        if ( n == 0 )
+        {
+            return 0L;
+        }
+
+        long rank = ( long ) Math.ceil( ( percentile / 100.0 ) * n );
+        if ( rank < 1 )
+        {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for ( int index = 0; index < BUCKET_COUNT; index++ )
+        {
+            seen += buckets.get( index );
+            if ( seen >= rank )
+            {
+                return Math.min( highestValue( index ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     * 
+     * @param value
+     */
+    public void record( long value )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+
+        buckets.incrementAndGet( bucketIndex( value ) );
+        total.addAndGet( value );
+        count.incrementAndGet();
+
+        long currentMax;
+        while ( value > ( currentMax = max.get() ) )
+        {
+            if ( max.compareAndSet( currentMax, value ) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Clear the histogram
+     */
+    public void reset()
+    {
+        for ( int index = 0; index < BUCKET_COUNT; index++ )
+        {
+            buckets.set( index, 0L );
+        }
+        count.set( 0L );
+        max.set( 0L );
+        total.set( 0L );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "count %d, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms", getCount(),
+                getValueAtPercentile( 50.0 ) / 1e6, getValueAtPercentile( 99.0 ) / 1e6,
+                getValueAtPercentile( 99.9 ) / 1e6, getMax() / 1e6 );
+    }
+
+    /**
+     * Return the bucket a value is counted in
+     * 
+     * @param value
+     * @return int
+     */
+    private static int bucketIndex( long value )
+    {
+        int msb = 63 - Long.numberOfLeadingZeros( value | 1 );
+        if ( msb < SUB_BUCKET_BITS )
+        {
+            return ( int ) value;
+        }
+        int shift = msb - ( SUB_BUCKET_BITS - 1 );
+        return SUB_BUCKET_HALF * shift + ( int ) ( value >>> shift );
+    }
+
+    /**
+     * Return the largest value counted in a bucket
+     * 
+     * @param index
+     * @return long
+     */
+    private static long highestValue( int index )
+    {
+        if ( index < 2 * SUB_BUCKET_HALF )
+        {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = ( long ) ( index - SUB_BUCKET_HALF * shift ) << shift;
+        return lowest + ( 1L << shift ) - 1;
+    }
+}
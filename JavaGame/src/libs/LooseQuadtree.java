@@ -0,0 +1,806 @@
+package libs;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/**
+ * Loose quadtree spatial index. The world, typically the display or the
+ * bounds of a playing field, is cut into four quarters at every level down to
+ * the maximum depth. A sprite is kept in the deepest node whose cells are at
+ * least as large as its bounds, in the cell that holds the center of its
+ * bounds. The nodes are loose: a node covers its cell plus half a cell on
+ * every side, so a sprite always fits in the node of its center and finding
+ * its node takes a few divisions instead of a walk down the tree. A sprite
+ * that moves within its cell stays in the same node, so a move usually only
+ * stores the new bounds.
+ * 
+ * Sprites whose center lies outside the world are kept in the root node and
+ * are tested by every query.
+ * 
+ * The range, radius and nearest queries compare the bounds the sprites had
+ * when they were last updated and hand the sprites they find to a visitor.
+ * They make no objects, so they can be run by sprite update code on every
+ * tick. A query may filter on the collision category of the sprites, a sprite
+ * that is not a collision filter is in every category. The visitor must not
+ * change the tree or start another query on it.
+ * 
+ * @author williamhooper
+ */
+public class LooseQuadtree
+{
+    /**
+     * A sprite with the bounds it had at the last update, linked into the
+     * list of its node
+     * 
+     * @author williamhooper
+     * 
+     */
+    private static final class Entry
+    {
+        private int category;
+        private int generation;
+        private int height;
+        private Entry next;
+        private int node = -1;
+        private Entry previous;
+        private final Sprite sprite;
+        private int width;
+        private int x;
+        private int y;
+
+        /**
+         * Constructor
+         * 
+         * @param sprite
+         */
+        private Entry( Sprite sprite )
+        {
+            this.sprite = sprite;
+        }
+    }
+
+    /**
+     * Number of levels below the root by default
+     */
+    public static final int DEFAULT_MAX_DEPTH = 5;
+
+    /**
+     * Most levels below the root a tree may have
+     */
+    private static final int MAX_DEPTH_LIMIT = 8;
+
+    /**
+     * Number of nearest sprites room is made for at first
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int [ ] childIndex;
+    private final double [ ] childDistance = new double [ 4 ];
+    private final int [ ] childNode = new int [ 4 ];
+    private final int [ ] counts;
+    private final byte [ ] depths;
+    private final int [ ] depthOffset;
+    private final IdentityHashMap< Sprite, Entry > entries = new IdentityHashMap< Sprite, Entry >();
+    private int generation;
+    private final Entry [ ] heads;
+    private final double [ ] looseMaxX;
+    private final double [ ] looseMaxY;
+    private final double [ ] looseMinX;
+    private final double [ ] looseMinY;
+    private final int maxDepth;
+    private Entry [ ] nearest = new Entry [ INITIAL_CAPACITY ];
+    private int nearestCount;
+    private double [ ] nearestDistance = new double [ INITIAL_CAPACITY ];
+    private final int [ ] parents;
+    private boolean querying;
+    private final int [ ] stack;
+    private final int worldHeight;
+    private final int worldWidth;
+    private final int worldX;
+    private final int worldY;
+
+    /**
+     * Constructor
+     * 
+     * @param world
+     *            area the sprites move in
+     */
+    public LooseQuadtree( Rectangle world )
+    {
+        this( world, DEFAULT_MAX_DEPTH );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param world
+     *            area the sprites move in
+     * @param maxDepth
+     *            number of levels below the root, from 0 to 8
+     */
+    public LooseQuadtree( Rectangle world, int maxDepth )
+    {
+        if ( world == null || world.isEmpty() )
+        {
+            throw new IllegalArgumentException( "World must not be empty" );
+        }
+        if ( maxDepth < 0 || maxDepth > MAX_DEPTH_LIMIT )
+        {
+            throw new IllegalArgumentException( "Max depth must be from 0 to " + MAX_DEPTH_LIMIT );
+        }
+        this.maxDepth = maxDepth;
+        worldX = world.x;
+        worldY = world.y;
+        worldWidth = world.width;
+        worldHeight = world.height;
+
+        /**
+         * The nodes of each level are stored row by row after those of the
+         * level above
+         */
+        depthOffset = new int [ maxDepth + 2 ];
+        for ( int depth = 0; depth <= maxDepth; depth++ )
+        {
+            depthOffset[ depth + 1 ] = depthOffset[ depth ] + ( 1 << ( 2 * depth ) );
+        }
+
+        int nodeCount = depthOffset[ maxDepth + 1 ];
+        childIndex = new int [ nodeCount ];
+        counts = new int [ nodeCount ];
+        depths = new byte [ nodeCount ];
+        heads = new Entry [ nodeCount ];
+        looseMinX = new double [ nodeCount ];
+        looseMinY = new double [ nodeCount ];
+        looseMaxX = new double [ nodeCount ];
+        looseMaxY = new double [ nodeCount ];
+        parents = new int [ nodeCount ];
+        stack = new int [ 3 * maxDepth + 4 ];
+
+        for ( int depth = 0; depth <= maxDepth; depth++ )
+        {
+            int side = 1 << depth;
+            double cellWidth = ( double ) worldWidth / side;
+            double cellHeight = ( double ) worldHeight / side;
+            for ( int cellY = 0; cellY < side; cellY++ )
+            {
+                for ( int cellX = 0; cellX < side; cellX++ )
+                {
+                    int node = depthOffset[ depth ] + cellY * side + cellX;
+                    depths[ node ] = ( byte ) depth;
+                    looseMinX[ node ] = worldX + ( cellX - 0.5 ) * cellWidth;
+                    looseMinY[ node ] = worldY + ( cellY - 0.5 ) * cellHeight;
+                    looseMaxX[ node ] = worldX + ( cellX + 1.5 ) * cellWidth;
+                    looseMaxY[ node ] = worldY + ( cellY + 1.5 ) * cellHeight;
+                    parents[ node ] = ( depth == 0 ) ? -1 : depthOffset[ depth - 1 ] + ( cellY >> 1 ) * ( side >> 1 )
+                            + ( cellX >> 1 );
+                    childIndex[ node ] = ( depth == maxDepth ) ? -1 : depthOffset[ depth + 1 ] + 4 * cellY * side
+                            + 2 * cellX;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all sprites
+     */
+    public void clear()
+    {
+        checkNotQuerying();
+        entries.clear();
+        Arrays.fill( heads, null );
+        Arrays.fill( counts, 0 );
+    }
+
+    /**
+     * Return true if the sprite is in the tree
+     * 
+     * @param sprite
+     * @return boolean
+     */
+    public boolean contains( Sprite sprite )
+    {
+        return entries.containsKey( sprite );
+    }
+
+    /**
+     * Visit up to count sprites nearest to x,y, nearest first. The distance
+     * to a sprite is the distance to the nearest point of its bounds.
+     * 
+     * @param x
+     * @param y
+     * @param count
+     * @param maxDistance
+     *            sprites further away are not visited
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findNearest( double x, double y, int count, double maxDistance, SpriteVisitor visitor )
+    {
+        return findNearest( x, y, count, maxDistance, CollisionFilter.ALL_CATEGORIES, visitor );
+    }
+
+    /**
+     * Visit up to count sprites in the categories nearest to x,y, nearest
+     * first. The distance to a sprite is the distance to the nearest point of
+     * its bounds.
+     * 
+     * @param x
+     * @param y
+     * @param count
+     * @param maxDistance
+     *            sprites further away are not visited
+     * @param categories
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findNearest( double x, double y, int count, double maxDistance, int categories, SpriteVisitor visitor )
+    {
+        if ( count <= 0 )
+        {
+            throw new IllegalArgumentException( "Count must be positive" );
+        }
+        if ( count > nearest.length )
+        {
+            int capacity = nearest.length;
+            while ( capacity < count )
+            {
+                capacity *= 2;
+            }
+            nearest = new Entry [ capacity ];
+            nearestDistance = new double [ capacity ];
+        }
+
+        beginQuery();
+        try
+        {
+            double maxDistanceSquared = maxDistance * maxDistance;
+            nearestCount = 0;
+            int top = 0;
+            stack[ top++ ] = 0;
+            while ( top > 0 )
+            {
+                int node = stack[ --top ];
+
+                /**
+                 * Once count sprites are found, only nodes that may hold a
+                 * nearer one are searched
+                 */
+                double limit = ( nearestCount == count ) ? nearestDistance[ count - 1 ] : maxDistanceSquared;
+                if ( counts[ node ] == 0 || ( node != 0 && distanceSquared( x, y, looseMinX[ node ],
+                        looseMinY[ node ], looseMaxX[ node ], looseMaxY[ node ] ) > limit ) )
+                {
+                    continue;
+                }
+
+                for ( Entry entry = heads[ node ]; entry != null; entry = entry.next )
+                {
+                    if ( inCategories( entry, categories ) )
+                    {
+                        double distance = distanceSquared( x, y, entry.x, entry.y, entry.x + entry.width,
+                                entry.y + entry.height );
+                        if ( distance <= maxDistanceSquared )
+                        {
+                            addNearest( entry, distance, count );
+                        }
+                    }
+                }
+                top = pushChildrenNearestFirst( node, top, x, y );
+            }
+
+            for ( int index = 0; index < nearestCount; index++ )
+            {
+                visitor.visit( nearest[ index ].sprite );
+            }
+        }
+        finally
+        {
+            Arrays.fill( nearest, 0, nearestCount, null );
+            querying = false;
+        }
+        return nearestCount;
+    }
+
+    /**
+     * Visit every sprite whose bounds are within the radius of x,y
+     * 
+     * @param x
+     * @param y
+     * @param radius
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findInRadius( double x, double y, double radius, SpriteVisitor visitor )
+    {
+        return findInRadius( x, y, radius, CollisionFilter.ALL_CATEGORIES, visitor );
+    }
+
+    /**
+     * Visit every sprite in the categories whose bounds are within the radius
+     * of x,y
+     * 
+     * @param x
+     * @param y
+     * @param radius
+     * @param categories
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findInRadius( double x, double y, double radius, int categories, SpriteVisitor visitor )
+    {
+        int found = 0;
+        beginQuery();
+        try
+        {
+            double radiusSquared = radius * radius;
+            int top = 0;
+            stack[ top++ ] = 0;
+            while ( top > 0 )
+            {
+                int node = stack[ --top ];
+                if ( counts[ node ] == 0 || ( node != 0 && distanceSquared( x, y, looseMinX[ node ],
+                        looseMinY[ node ], looseMaxX[ node ], looseMaxY[ node ] ) > radiusSquared ) )
+                {
+                    continue;
+                }
+
+                for ( Entry entry = heads[ node ]; entry != null; entry = entry.next )
+                {
+                    if ( inCategories( entry, categories ) && distanceSquared( x, y, entry.x, entry.y,
+                            entry.x + entry.width, entry.y + entry.height ) <= radiusSquared )
+                    {
+                        found++;
+                        visitor.visit( entry.sprite );
+                    }
+                }
+                top = pushChildren( node, top );
+            }
+        }
+        finally
+        {
+            querying = false;
+        }
+        return found;
+    }
+
+    /**
+     * Visit every sprite whose bounds overlap the rectangle
+     * 
+     * @param rect
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findInRectangle( Rectangle rect, SpriteVisitor visitor )
+    {
+        return findInRectangle( rect.x, rect.y, rect.width, rect.height, CollisionFilter.ALL_CATEGORIES, visitor );
+    }
+
+    /**
+     * Visit every sprite in the categories whose bounds overlap the rectangle
+     * at x,y. An empty rectangle overlaps nothing.
+     * 
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @param categories
+     * @param visitor
+     * @return int number of sprites visited
+     */
+    public int findInRectangle( int x, int y, int width, int height, int categories, SpriteVisitor visitor )
+    {
+        int found = 0;
+        if ( width <= 0 || height <= 0 )
+        {
+            return found;
+        }
+        beginQuery();
+        try
+        {
+            int right = x + width;
+            int bottom = y + height;
+            int top = 0;
+            stack[ top++ ] = 0;
+            while ( top > 0 )
+            {
+                int node = stack[ --top ];
+                if ( counts[ node ] == 0 || ( node != 0 && ( looseMinX[ node ] >= right || looseMaxX[ node ] <= x
+                        || looseMinY[ node ] >= bottom || looseMaxY[ node ] <= y ) ) )
+                {
+                    continue;
+                }
+
+                /**
+                 * The same test as Rectangle.intersects
+                 */
+                for ( Entry entry = heads[ node ]; entry != null; entry = entry.next )
+                {
+                    if ( inCategories( entry, categories ) && entry.x < right && x < entry.x + entry.width
+                            && entry.y < bottom && y < entry.y + entry.height )
+                    {
+                        found++;
+                        visitor.visit( entry.sprite );
+                    }
+                }
+                top = pushChildren( node, top );
+            }
+        }
+        finally
+        {
+            querying = false;
+        }
+        return found;
+    }
+
+    /**
+     * Return the number of levels below the root
+     * 
+     * @return int
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * Remove a sprite
+     * 
+     * @param sprite
+     * @return boolean true if the sprite was in the tree
+     */
+    public boolean remove( Sprite sprite )
+    {
+        checkNotQuerying();
+        Entry entry = entries.remove( sprite );
+        if ( entry == null )
+        {
+            return false;
+        }
+        unlink( entry );
+        return true;
+    }
+
+    /**
+     * Return the number of sprites in the tree
+     * 
+     * @return int
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Take the bounds of a sprite after it moved, adding it if it is not in
+     * the tree yet. A sprite without bounds is removed.
+     * 
+     * @param sprite
+     */
+    public void update( Sprite sprite )
+    {
+        checkNotQuerying();
+        store( sprite );
+    }
+
+    /**
+     * Take the bounds of the sprites for this tick. Sprites that are not in
+     * the collection any more are removed.
+     * 
+     * @param sprites
+     */
+    public void update( Collection< ? extends Sprite > sprites )
+    {
+        checkNotQuerying();
+        generation++;
+        for ( Sprite sprite : sprites )
+        {
+            store( sprite );
+        }
+
+        /**
+         * Drop the sprites that left the game, skipping the empty parts of
+         * the tree
+         */
+        int top = 0;
+        stack[ top++ ] = 0;
+        while ( top > 0 )
+        {
+            int node = stack[ --top ];
+            if ( counts[ node ] == 0 )
+            {
+                continue;
+            }
+            top = pushChildren( node, top );
+
+            Entry entry = heads[ node ];
+            while ( entry != null )
+            {
+                Entry next = entry.next;
+                if ( entry.generation != generation )
+                {
+                    entries.remove( entry.sprite );
+                    unlink( entry );
+                }
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Keep a sprite among the nearest ones found so far, sorted on distance
+     * 
+     * @param entry
+     * @param distance
+     * @param count
+     */
+    private void addNearest( Entry entry, double distance, int count )
+    {
+        if ( nearestCount == count )
+        {
+            if ( distance >= nearestDistance[ count - 1 ] )
+            {
+                return;
+            }
+            nearestCount--;
+        }
+
+        int position = nearestCount++;
+        while ( position > 0 && nearestDistance[ position - 1 ] > distance )
+        {
+            nearest[ position ] = nearest[ position - 1 ];
+            nearestDistance[ position ] = nearestDistance[ position - 1 ];
+            position--;
+        }
+        nearest[ position ] = entry;
+        nearestDistance[ position ] = distance;
+    }
+
+    /**
+     * Mark the start of a query
+     */
+    private void beginQuery()
+    {
+        checkNotQuerying();
+        querying = true;
+    }
+
+    /**
+     * Refuse to change or query the tree from inside a visitor
+     */
+    private void checkNotQuerying()
+    {
+        if ( querying )
+        {
+            throw new IllegalStateException( "Quadtree must not be used by a visitor of one of its queries" );
+        }
+    }
+
+    /**
+     * Return the squared distance from x,y to the nearest point of a box
+     * 
+     * @param x
+     * @param y
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return double
+     */
+    private static double distanceSquared( double x, double y, double minX, double minY, double maxX, double maxY )
+    {
+        double deltaX = Math.max( Math.max( minX - x, x - maxX ), 0.0 );
+        double deltaY = Math.max( Math.max( minY - y, y - maxY ), 0.0 );
+        return deltaX * deltaX + deltaY * deltaY;
+    }
+
+    /**
+     * Return true if the sprite is in one of the categories
+     * 
+     * @param entry
+     * @param categories
+     * @return boolean
+     */
+    private static boolean inCategories( Entry entry, int categories )
+    {
+        return categories == CollisionFilter.ALL_CATEGORIES || ( entry.category & categories ) != 0;
+    }
+
+    /**
+     * Link an entry into the list of a node
+     * 
+     * @param entry
+     * @param node
+     */
+    private void link( Entry entry, int node )
+    {
+        entry.node = node;
+        entry.previous = null;
+        entry.next = heads[ node ];
+        if ( entry.next != null )
+        {
+            entry.next.previous = entry;
+        }
+        heads[ node ] = entry;
+
+        for ( int parent = node; parent != -1; parent = parents[ parent ] )
+        {
+            counts[ parent ]++;
+        }
+    }
+
+    /**
+     * Return the node for bounds: the deepest level whose cells are at least
+     * as large as the bounds, in the cell of their center
+     * 
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @return int
+     */
+    private int nodeFor( int x, int y, int width, int height )
+    {
+        double centerX = x + width / 2.0 - worldX;
+        double centerY = y + height / 2.0 - worldY;
+        if ( centerX < 0 || centerY < 0 || centerX >= worldWidth || centerY >= worldHeight )
+        {
+            return 0;
+        }
+
+        int depth = 0;
+        while ( depth < maxDepth && ( long ) width << ( depth + 1 ) <= worldWidth
+                && ( long ) height << ( depth + 1 ) <= worldHeight )
+        {
+            depth++;
+        }
+
+        int side = 1 << depth;
+        int cellX = Math.min( ( int ) ( centerX * side / worldWidth ), side - 1 );
+        int cellY = Math.min( ( int ) ( centerY * side / worldHeight ), side - 1 );
+        return depthOffset[ depth ] + cellY * side + cellX;
+    }
+
+    /**
+     * Push the children of a node on the stack
+     * 
+     * @param node
+     * @param top
+     * @return int new top of the stack
+     */
+    private int pushChildren( int node, int top )
+    {
+        int child = childIndex[ node ];
+        if ( child != -1 )
+        {
+            int side = 2 << depths[ node ];
+            stack[ top++ ] = child;
+            stack[ top++ ] = child + 1;
+            stack[ top++ ] = child + side;
+            stack[ top++ ] = child + side + 1;
+        }
+        return top;
+    }
+
+    /**
+     * Push the children of a node on the stack so the one nearest to x,y is
+     * searched first
+     * 
+     * @param node
+     * @param top
+     * @param x
+     * @param y
+     * @return int new top of the stack
+     */
+    private int pushChildrenNearestFirst( int node, int top, double x, double y )
+    {
+        int child = childIndex[ node ];
+        if ( child == -1 )
+        {
+            return top;
+        }
+
+        int side = 2 << depths[ node ];
+        childNode[ 0 ] = child;
+        childNode[ 1 ] = child + 1;
+        childNode[ 2 ] = child + side;
+        childNode[ 3 ] = child + side + 1;
+        for ( int index = 0; index < 4; index++ )
+        {
+            int next = childNode[ index ];
+            double distance = distanceSquared( x, y, looseMinX[ next ], looseMinY[ next ], looseMaxX[ next ],
+                    looseMaxY[ next ] );
+            int position = index;
+            while ( position > 0 && childDistance[ position - 1 ] < distance )
+            {
+                childNode[ position ] = childNode[ position - 1 ];
+                childDistance[ position ] = childDistance[ position - 1 ];
+                position--;
+            }
+            childNode[ position ] = next;
+            childDistance[ position ] = distance;
+        }
+
+        /**
+         * Sorted furthest first, so the nearest ends up on top
+         */
+        for ( int index = 0; index < 4; index++ )
+        {
+            stack[ top++ ] = childNode[ index ];
+        }
+        return top;
+    }
+
+    /**
+     * Take the bounds of a sprite and move it to the node they belong in
+     * 
+     * @param sprite
+     */
+    private void store( Sprite sprite )
+    {
+        Rectangle bounds = sprite.getBounds();
+        if ( bounds == null || bounds.isEmpty() )
+        {
+            Entry entry = entries.remove( sprite );
+            if ( entry != null )
+            {
+                unlink( entry );
+            }
+            return;
+        }
+
+        Entry entry = entries.get( sprite );
+        if ( entry == null )
+        {
+            entry = new Entry( sprite );
+            entries.put( sprite, entry );
+        }
+        entry.category = ( sprite instanceof CollisionFilter ) ? ( ( CollisionFilter ) sprite )
+                .getCollisionCategory() : CollisionFilter.ALL_CATEGORIES;
+        entry.generation = generation;
+        entry.x = bounds.x;
+        entry.y = bounds.y;
+        entry.width = bounds.width;
+        entry.height = bounds.height;
+
+        int node = nodeFor( bounds.x, bounds.y, bounds.width, bounds.height );
+        if ( node != entry.node )
+        {
+            if ( entry.node != -1 )
+            {
+                unlink( entry );
+            }
+            link( entry, node );
+        }
+    }
+
+    /**
+     * Unlink an entry from the list of its node
+     * 
+     * @param entry
+     */
+    private void unlink( Entry entry )
+    {
+        int node = entry.node;
+        if ( entry.previous != null )
+        {
+            entry.previous.next = entry.next;
+        }
+        else
+        {
+            heads[ node ] = entry.next;
+        }
+        if ( entry.next != null )
+        {
+            entry.next.previous = entry.previous;
+        }
+        entry.next = null;
+        entry.previous = null;
+        entry.node = -1;
+
+        for ( int parent = node; parent != -1; parent = parents[ parent ] )
+        {
+            counts[ parent ]--;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package libs;
+
+import java.awt.Rectangle;
+
+/**
+ * Narrowphase collision tests. Compares the collider shapes of two sprites,
+ * with a test picked for each pair of shape kinds: circles only need their
+ * squared distance, a circle and a box the squared distance to the nearest
+ * point of the box, two axis aligned boxes their extents, and oriented boxes
+ * are tested for a separating axis. A sprite without a collider shape is taken
+ * as its bounding box, a swept collider as the box it covers along its move.
+ * None of the tests make objects.
+ * 
+ * Like Rectangle.intersects, shapes that only touch at their edges do not
+ * intersect.
+ * 
+ * @author williamhooper
+ */
+public final class Narrowphase
+{
+    /**
+     * Static methods only
+     */
+    private Narrowphase( )
+    {}
+
+    /**
+     * Return true if the collider shapes of two sprites intersect
+     * 
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    public static boolean intersects( Sprite first, Sprite second )
+    {
+        ColliderShape firstShape = getColliderShape( first );
+        ColliderShape secondShape = getColliderShape( second );
+        if ( firstShape == null && secondShape == null )
+        {
+            return first.getBounds().intersects( second.getBounds() );
+        }
+        if ( firstShape == null )
+        {
+            return intersects( secondShape, first.getBounds() );
+        }
+        if ( secondShape == null )
+        {
+            return intersects( firstShape, second.getBounds() );
+        }
+        return intersects( firstShape, secondShape );
+    }
+
+    /**
+     * Return true if the collider shapes of two sprites, one of them a swept
+     * collider, can touch from the time of impact to the end of the tick. A
+     * swept collider without a shape is taken as the box it covers over that
+     * part of its move. A swept collider with a shape of its own is taken to
+     * touch, since its shape is only known at the end of the move.
+     * 
+     * @param first
+     * @param second
+     * @param timeOfImpact
+     * @return boolean
+     */
+    public static boolean intersectsFrom( Sprite first, Sprite second, double timeOfImpact )
+    {
+        ColliderShape firstShape = getColliderShape( first );
+        ColliderShape secondShape = getColliderShape( second );
+        if ( firstShape != null && secondShape == null && !( first instanceof SweptCollider ) )
+        {
+            return intersectsMove( firstShape, second, timeOfImpact );
+        }
+        if ( secondShape != null && firstShape == null && !( second instanceof SweptCollider ) )
+        {
+            return intersectsMove( secondShape, first, timeOfImpact );
+        }
+        return true;
+    }
+
+    /**
+     * Return true if two collider shapes intersect
+     * 
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    public static boolean intersects( ColliderShape first, ColliderShape second )
+    {
+        /**
+         * Put the circle first, so only half of the pairs of kinds need a test
+         */
+        if ( second.getType() == ColliderShape.ShapeType.Circle && first.getType() != ColliderShape.ShapeType.Circle )
+        {
+            ColliderShape swap = first;
+            first = second;
+            second = swap;
+        }
+
+        double deltaX = first.getCenterX() - second.getCenterX();
+        double deltaY = first.getCenterY() - second.getCenterY();
+        switch ( first.getType() )
+        {
+            case Circle:
+                switch ( second.getType() )
+                {
+                    case Circle:
+                        double radius = first.getRadius() + second.getRadius();
+                        return deltaX * deltaX + deltaY * deltaY < radius * radius;
+                    case Box:
+                        return circleBox( deltaX, deltaY, first.getRadius(), second.getHalfWidth(),
+                                second.getHalfHeight() );
+                    default:
+                        return circleBox( deltaX * second.getCos() + deltaY * second.getSin(),
+                                deltaY * second.getCos() - deltaX * second.getSin(), first.getRadius(),
+                                second.getHalfWidth(), second.getHalfHeight() );
+                }
+
+            case Box:
+                if ( second.getType() == ColliderShape.ShapeType.Box )
+                {
+                    return Math.abs( deltaX ) < first.getHalfWidth() + second.getHalfWidth()
+                            && Math.abs( deltaY ) < first.getHalfHeight() + second.getHalfHeight();
+                }
+                return orientedBoxes( deltaX, deltaY, first.getHalfWidth(), first.getHalfHeight(), 1.0, 0.0,
+                        second.getHalfWidth(), second.getHalfHeight(), second.getCos(), second.getSin() );
+
+            default:
+                return orientedBoxes( deltaX, deltaY, first.getHalfWidth(), first.getHalfHeight(), first.getCos(),
+                        first.getSin(), second.getHalfWidth(), second.getHalfHeight(), second.getCos(),
+                        second.getSin() );
+        }
+    }
+
+    /**
+     * Return true if a collider shape intersects a rectangle
+     * 
+     * @param shape
+     * @param rect
+     * @return boolean
+     */
+    public static boolean intersects( ColliderShape shape, Rectangle rect )
+    {
+        return intersects( shape, rect.x, rect.y, rect.width, rect.height );
+    }
+
+    /**
+     * Return true if a collider shape intersects the rectangle at x,y. An
+     * empty rectangle intersects nothing.
+     * 
+     * @param shape
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @return boolean
+     */
+    public static boolean intersects( ColliderShape shape, int x, int y, int width, int height )
+    {
+        if ( width <= 0 || height <= 0 )
+        {
+            return false;
+        }
+
+        double halfWidth = width / 2.0;
+        double halfHeight = height / 2.0;
+        double deltaX = shape.getCenterX() - ( x + halfWidth );
+        double deltaY = shape.getCenterY() - ( y + halfHeight );
+        switch ( shape.getType() )
+        {
+            case Circle:
+                return circleBox( deltaX, deltaY, shape.getRadius(), halfWidth, halfHeight );
+
+            case Box:
+                return Math.abs( deltaX ) < shape.getHalfWidth() + halfWidth
+                        && Math.abs( deltaY ) < shape.getHalfHeight() + halfHeight;
+
+            default:
+                return orientedBoxes( deltaX, deltaY, shape.getHalfWidth(), shape.getHalfHeight(), shape.getCos(),
+                        shape.getSin(), halfWidth, halfHeight, 1.0, 0.0 );
+        }
+    }
+
+    /**
+     * Return true if a circle intersects an axis aligned box, with the center
+     * of the circle given relative to the center of the box
+     * 
+     * @param deltaX
+     * @param deltaY
+     * @param radius
+     * @param halfWidth
+     * @param halfHeight
+     * @return boolean
+     */
+    private static boolean circleBox( double deltaX, double deltaY, double radius, double halfWidth,
+            double halfHeight )
+    {
+        double outsideX = Math.max( Math.abs( deltaX ) - halfWidth, 0.0 );
+        double outsideY = Math.max( Math.abs( deltaY ) - halfHeight, 0.0 );
+        return outsideX * outsideX + outsideY * outsideY < radius * radius;
+    }
+
+    /**
+     * Return the collider shape of a sprite, or null if it is taken as its
+     * bounds
+     * 
+     * @param sprite
+     * @return ColliderShape
+     */
+    private static ColliderShape getColliderShape( Sprite sprite )
+    {
+        if ( sprite instanceof ShapedCollider )
+        {
+            return ( ( ShapedCollider ) sprite ).getColliderShape();
+        }
+        return null;
+    }
+
+    /**
+     * Return true if a collider shape intersects the box a sprite covers from
+     * the time of impact to the end of its move
+     * 
+     * @param shape
+     * @param sprite
+     * @param timeOfImpact
+     * @return boolean
+     */
+    private static boolean intersectsMove( ColliderShape shape, Sprite sprite, double timeOfImpact )
+    {
+        Rectangle bounds = sprite.getBounds();
+        Rectangle previous = ( sprite instanceof SweptCollider ) ? ( ( SweptCollider ) sprite ).getPreviousBounds()
+                : null;
+        if ( previous == null || previous.isEmpty() )
+        {
+            return intersects( shape, bounds );
+        }
+
+        double startX = previous.x + ( bounds.x - previous.x ) * timeOfImpact;
+        double startY = previous.y + ( bounds.y - previous.y ) * timeOfImpact;
+        int left = ( int ) Math.floor( Math.min( startX, bounds.x ) );
+        int top = ( int ) Math.floor( Math.min( startY, bounds.y ) );
+        int right = ( int ) Math.ceil( Math.max( startX + previous.width, bounds.x + bounds.width ) );
+        int bottom = ( int ) Math.ceil( Math.max( startY + previous.height, bounds.y + bounds.height ) );
+        return intersects( shape, left, top, right - left, bottom - top );
+    }
+
+    /**
+     * Return true if two oriented boxes intersect, with the center of the
+     * first given relative to the center of the second. Two boxes are apart
+     * when the gap between them shows along one of the axes of their edges.
+     * 
+     * @param deltaX
+     * @param deltaY
+     * @param firstHalfWidth
+     * @param firstHalfHeight
+     * @param firstCos
+     * @param firstSin
+     * @param secondHalfWidth
+     * @param secondHalfHeight
+     * @param secondCos
+     * @param secondSin
+     * @return boolean
+     */
+    private static boolean orientedBoxes( double deltaX, double deltaY, double firstHalfWidth,
+            double firstHalfHeight, double firstCos, double firstSin, double secondHalfWidth,
+            double secondHalfHeight, double secondCos, double secondSin )
+    {
+        return overlapsOnAxis( firstCos, firstSin, deltaX, deltaY, firstHalfWidth, firstHalfHeight, firstCos,
+                firstSin, secondHalfWidth, secondHalfHeight, secondCos, secondSin )
+                && overlapsOnAxis( -firstSin, firstCos, deltaX, deltaY, firstHalfWidth, firstHalfHeight, firstCos,
+                        firstSin, secondHalfWidth, secondHalfHeight, secondCos, secondSin )
+                && overlapsOnAxis( secondCos, secondSin, deltaX, deltaY, firstHalfWidth, firstHalfHeight, firstCos,
+                        firstSin, secondHalfWidth, secondHalfHeight, secondCos, secondSin )
+                && overlapsOnAxis( -secondSin, secondCos, deltaX, deltaY, firstHalfWidth, firstHalfHeight,
+                        firstCos, firstSin, secondHalfWidth, secondHalfHeight, secondCos, secondSin );
+    }
+
+    /**
+     * Return true if two oriented boxes overlap when projected on an axis
+     * 
+     * @param axisX
+     * @param axisY
+     * @param deltaX
+     * @param deltaY
+     * @param firstHalfWidth
+     * @param firstHalfHeight
+     * @param firstCos
+     * @param firstSin
+     * @param secondHalfWidth
+     * @param secondHalfHeight
+     * @param secondCos
+     * @param secondSin
+     * @return boolean
+     */
+    private static boolean overlapsOnAxis( double axisX, double axisY, double deltaX, double deltaY,
+            double firstHalfWidth, double firstHalfHeight, double firstCos, double firstSin,
+            double secondHalfWidth, double secondHalfHeight, double secondCos, double secondSin )
+    {
+        double firstExtent = firstHalfWidth * Math.abs( firstCos * axisX + firstSin * axisY ) + firstHalfHeight
+                * Math.abs( firstCos * axisY - firstSin * axisX );
+        double secondExtent = secondHalfWidth * Math.abs( secondCos * axisX + secondSin * axisY )
+                + secondHalfHeight * Math.abs( secondCos * axisY - secondSin * axisX );
+        return Math.abs( deltaX * axisX + deltaY * axisY ) < firstExtent + secondExtent;
+    }
+}
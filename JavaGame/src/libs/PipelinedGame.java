@@ -0,0 +1,38 @@
+package libs;
+
+/**
+ * Game interface for games that can be rendered on a separate thread. While the
+ * render thread draws frame N from a snapshot, the game engine thread checks
+ * collisions and updates frame N+1. The game engine owns two snapshot objects
+ * created by the game and hands them back and forth, so the game must copy
+ * everything it needs for rendering into the snapshot and must not touch its
+ * live game objects from render( S ).
+ * 
+ * @author williamhooper
+ */
+public interface PipelinedGame< S > extends Game
+{
+    /**
+     * Create an empty snapshot object. Called twice when the game engine
+     * starts.
+     * 
+     * @return S
+     */
+    abstract public S createSnapshot();
+
+    /**
+     * Copy the current game state into the snapshot. Called on the game engine
+     * thread after each update.
+     * 
+     * @param snapshot
+     */
+    abstract public void snapshot( S snapshot );
+
+    /**
+     * Render a snapshot onto the offscreen buffer. Called on the render
+     * thread, followed by draw().
+     * 
+     * @param snapshot
+     */
+    abstract public void render( S snapshot );
+}
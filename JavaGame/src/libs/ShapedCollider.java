@@ -0,0 +1,26 @@
+package libs;
+
+/**
+ * Shaped collider. A sprite implements this interface when its bounding box is
+ * a poor fit for what it looks like, a round sprite for instance. Once the
+ * broadphase found that the bounds of a pair overlap, the collision pass
+ * compares the collider shapes and drops the pair if they do not touch. The
+ * other sprite of the pair is taken as its bounding box when it has no shape,
+ * or as the box it covers along its move when it is a swept collider.
+ * 
+ * The shape is read while pairs are tested, possibly on other threads, so the
+ * sprite should only change it in its update method.
+ * 
+ * @author williamhooper
+ */
+
+public interface ShapedCollider
+{
+    /**
+     * Return the collider shape of the sprite, or null to use its bounds. The
+     * shape may be the sprite's own, so callers must not change it.
+     * 
+     * @return ColliderShape
+     */
+    public ColliderShape getColliderShape();
+}
@@ -0,0 +1,111 @@
+package libs;
+
+/**
+ * Double buffer for handing game snapshots from the game engine thread to the
+ * render thread. The writer always gets the buffer the reader is not using, so
+ * the game engine thread never waits on rendering. If the reader falls behind,
+ * a snapshot that has not been read yet is overwritten by the newer one.
+ * 
+ * @author williamhooper
+ */
+public class SnapshotBuffer< S >
+{
+    private S [ ] buffers;
+    private boolean closed;
+    private int publishedIndex;
+    private int readIndex;
+    private int writeIndex;
+
+    /**
+     * Constructor
+     * 
+     * @param first
+     * @param second
+     */
+    @SuppressWarnings( "unchecked" )
+    public SnapshotBuffer( S first, S second )
+    {
+        buffers = ( S [ ] ) new Object [ ] { first, second };
+        publishedIndex = -1;
+        readIndex = -1;
+        writeIndex = -1;
+    }
+
+    /**
+     * Get the buffer to write the next snapshot into. The buffer is not seen by
+     * the reader until it is published.
+     * 
+     * @return S
+     */
+    public synchronized S acquireWrite()
+    {
+        writeIndex = ( readIndex == 0 ) ? 1 : 0;
+        if ( publishedIndex == writeIndex )
+        {
+            /**
+             * The reader never picked up this snapshot, drop it
+             */
+            publishedIndex = -1;
+        }
+        return buffers[ writeIndex ];
+    }
+
+    /**
+     * Get the most recently published snapshot, waiting for one if needed.
+     * Returns null once the buffer is closed.
+     * 
+     * @return S
+     */
+    public synchronized S acquireRead()
+    {
+        while ( publishedIndex == -1 && !closed )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException exception )
+            {}
+        }
+
+        if ( closed )
+        {
+            return null;
+        }
+
+        readIndex = publishedIndex;
+        publishedIndex = -1;
+        return buffers[ readIndex ];
+    }
+
+    /**
+     * Close the buffer and release a waiting reader
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Publish the buffer returned by acquireWrite()
+     */
+    public synchronized void publish()
+    {
+        if ( writeIndex == -1 )
+        {
+            throw new RuntimeException( "No snapshot buffer acquired for writing" );
+        }
+        publishedIndex = writeIndex;
+        writeIndex = -1;
+        notifyAll();
+    }
+
+    /**
+     * Release the buffer returned by acquireRead()
+     */
+    public synchronized void releaseRead()
+    {
+        readIndex = -1;
+    }
+}
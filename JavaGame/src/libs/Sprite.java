@@ -14,7 +14,9 @@ import java.awt.event.MouseEvent;
 public interface Sprite
 {
     /**
-     * Determine if the passed Sprite object collided with this object.
+     * Determine if the passed Sprite object collided with this object. A
+     * sprite that implements ContactTest is only asked when its side effect
+     * free test passed.
      * 
      * @param obj
      */
@@ -28,7 +30,8 @@ public interface Sprite
     public abstract void draw( Graphics2D g );
 
     /**
-     * Return the bounding box for this sprite
+     * Return the bounding box for this sprite. The rectangle may be the
+     * sprite's own, so callers must not change it.
      * 
      */
     public abstract Rectangle getBounds();
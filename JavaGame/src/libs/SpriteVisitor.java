@@ -0,0 +1,18 @@
+package libs;
+
+/**
+ * Sprite visitor. A spatial query hands every sprite it finds to this
+ * visitor, so the query needs no list of its own for the results.
+ * 
+ * @author williamhooper
+ */
+
+public interface SpriteVisitor
+{
+    /**
+     * Receive a sprite found by a query
+     * 
+     * @param sprite
+     */
+    public void visit( Sprite sprite );
+}
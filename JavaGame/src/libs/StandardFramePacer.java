@@ -0,0 +1,76 @@
+package libs;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The frame pacers supplied with the game library
+ * 
+ * @author williamhooper
+ */
+public enum StandardFramePacer implements FramePacer
+{
+    /**
+     * Park the thread until shortly before the deadline, then spin for the
+     * rest. Accurate to a few microseconds at the cost of a little CPU time.
+     */
+    PARK_SPIN
+    {
+        @Override
+        public void waitUntil( long deadline )
+        {
+            long remaining;
+            while ( ( remaining = deadline - System.nanoTime() ) > SPIN_THRESHOLD )
+            {
+                LockSupport.parkNanos( remaining - SPIN_THRESHOLD );
+            }
+            while ( deadline - System.nanoTime() > 0 )
+            {
+                Thread.onSpinWait();
+            }
+        }
+    },
+
+    /**
+     * Sleep until the deadline. Uses the least CPU time but wakes up as late
+     * as the operating system scheduler decides.
+     */
+    SLEEP
+    {
+        @Override
+        public void waitUntil( long deadline )
+        {
+            long remaining = deadline - System.nanoTime();
+            if ( remaining > 0 )
+            {
+                try
+                {
+                    Thread.sleep( remaining / 1000000L, ( int ) ( remaining % 1000000L ) );
+                }
+                catch ( InterruptedException ex )
+                {}
+            }
+        }
+    },
+
+    /**
+     * Spin until the deadline. The most accurate pacer, but it keeps a core
+     * busy for the whole frame.
+     */
+    BUSY_SPIN
+    {
+        @Override
+        public void waitUntil( long deadline )
+        {
+            while ( deadline - System.nanoTime() > 0 )
+            {
+                Thread.onSpinWait();
+            }
+        }
+    };
+
+    /**
+     * Time before the deadline at which PARK_SPIN stops parking and starts
+     * spinning
+     */
+    private static final long SPIN_THRESHOLD = 250000L;
+}
@@ -0,0 +1,343 @@
+package libs;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * Sweep and prune broadphase. The sprites are kept sorted on the left edge of
+ * their bounds from one tick to the next. Sprites move only a little per
+ * tick, so the order hardly changes and an insertion sort puts it right again
+ * in close to linear time. A sweep along the sorted sprites then only tests
+ * the sprites whose x ranges overlap.
+ * 
+ * A swept collider is sorted and swept with the box it covered during its last
+ * move. Sprites whose collision filter keeps them out of collisions are left out,
+ * and pairs whose filters do not match are not reported.
+ * 
+ * Sprites that jump further than the teleport distance in one tick, like
+ * sprites wrapping around the display, and sprites new to the game are taken
+ * out of the insertion sort and merged back in, so they do not cost a pass
+ * over the whole order.
+ * 
+ * @author williamhooper
+ */
+public class SweepAndPrune implements Broadphase
+{
+    /**
+     * A sprite with the bounds it had at the last update
+     * 
+     * @author williamhooper
+     * 
+     */
+    private static final class Entry
+    {
+        private int category;
+        private int generation;
+        private int height;
+        private int listIndex;
+        private int mask;
+        private boolean moved;
+        private final Sprite sprite;
+        private int width;
+        private int x;
+        private int y;
+
+        /**
+         * Constructor
+         * 
+         * @param sprite
+         */
+        private Entry( Sprite sprite )
+        {
+            this.sprite = sprite;
+        }
+    }
+
+    /**
+     * Distance in pixels a sprite may move in one tick and still be sorted in
+     * place by default
+     */
+    private static final int DEFAULT_TELEPORT_DISTANCE = 64;
+
+    /**
+     * Order of the entries, on their left edge, then on their place in the
+     * sprite list
+     */
+    private static final Comparator< Entry > ENTRY_ORDER = new Comparator< Entry >()
+    {
+        @Override
+        public int compare( Entry first, Entry second )
+        {
+            if ( first.x != second.x )
+            {
+                return ( first.x < second.x ) ? -1 : 1;
+            }
+            return Integer.compare( first.listIndex, second.listIndex );
+        }
+    };
+
+    /**
+     * Number of sprites room is made for at first
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final IdentityHashMap< Sprite, Entry > entries = new IdentityHashMap< Sprite, Entry >();
+    private int entryCount;
+    private int generation;
+    private Entry [ ] moved = new Entry [ INITIAL_CAPACITY ];
+    private Entry [ ] order = new Entry [ INITIAL_CAPACITY ];
+    private int pairCount;
+    private Entry [ ] sorted = new Entry [ INITIAL_CAPACITY ];
+    private final Rectangle sweptBounds = new Rectangle();
+    private final int teleportDistance;
+
+    /**
+     * Constructor
+     * 
+     */
+    public SweepAndPrune( )
+    {
+        this( DEFAULT_TELEPORT_DISTANCE );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param teleportDistance
+     *            distance in pixels above which a sprite's move in one tick is
+     *            treated as a jump
+     */
+    public SweepAndPrune( int teleportDistance )
+    {
+        if ( teleportDistance <= 0 )
+        {
+            throw new IllegalArgumentException( "Teleport distance must be positive" );
+        }
+        this.teleportDistance = teleportDistance;
+    }
+
+    @Override
+    public void findPairs( CollisionPairListener listener )
+    {
+        pairCount = 0;
+
+        for ( int first = 0; first < entryCount; first++ )
+        {
+            Entry entry = order[ first ];
+            int right = entry.x + entry.width;
+
+            /**
+             * Every sprite after this one in the order starts at or to the
+             * right of its left edge, so the sweep stops at the first sprite
+             * that starts past its right edge
+             */
+            for ( int second = first + 1; second < entryCount; second++ )
+            {
+                Entry other = order[ second ];
+                if ( other.x >= right )
+                {
+                    break;
+                }
+                if ( ( entry.category & other.mask ) != 0 && ( other.category & entry.mask ) != 0
+                        && entry.y < other.y + other.height && other.y < entry.y + entry.height )
+                {
+                    pairCount++;
+                    listener.collisionPair( entry.sprite, other.sprite );
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getPairCount()
+    {
+        return pairCount;
+    }
+
+    /**
+     * Return the distance in pixels above which a sprite's move in one tick is
+     * treated as a jump
+     * 
+     * @return int
+     */
+    public int getTeleportDistance()
+    {
+        return teleportDistance;
+    }
+
+    @Override
+    public void update( Collection< ? extends Sprite > sprites )
+    {
+        generation++;
+
+        /**
+         * Take the bounds of every sprite, and mark the new sprites and the
+         * ones that jumped
+         */
+        int listIndex = 0;
+        int movedCount = 0;
+        for ( Sprite sprite : sprites )
+        {
+            int category = CollisionFilter.ALL_CATEGORIES;
+            int mask = CollisionFilter.ALL_CATEGORIES;
+            if ( sprite instanceof CollisionFilter )
+            {
+                category = ( ( CollisionFilter ) sprite ).getCollisionCategory();
+                mask = ( ( CollisionFilter ) sprite ).getCollisionMask();
+                if ( category == 0 || mask == 0 )
+                {
+                    continue;
+                }
+            }
+
+            Rectangle bounds = SweptBounds.getSweptBounds( sprite, sweptBounds );
+            if ( bounds == null || bounds.isEmpty() )
+            {
+                continue;
+            }
+
+            Entry entry = entries.get( sprite );
+            boolean jumped;
+            if ( entry == null )
+            {
+                entry = new Entry( sprite );
+                entries.put( sprite, entry );
+                jumped = true;
+            }
+            else
+            {
+                jumped = Math.abs( bounds.x - entry.x ) > teleportDistance;
+            }
+
+            entry.category = category;
+            entry.mask = mask;
+            entry.generation = generation;
+            entry.listIndex = listIndex++;
+            entry.x = bounds.x;
+            entry.y = bounds.y;
+            entry.width = bounds.width;
+            entry.height = bounds.height;
+            entry.moved = jumped;
+
+            if ( jumped )
+            {
+                if ( movedCount == moved.length )
+                {
+                    moved = Arrays.copyOf( moved, movedCount * 2 );
+                }
+                moved[ movedCount++ ] = entry;
+            }
+        }
+
+        /**
+         * Drop the sprites that left the game and take the marked ones out,
+         * keeping the order of the rest
+         */
+        int keptCount = 0;
+        for ( int index = 0; index < entryCount; index++ )
+        {
+            Entry entry = order[ index ];
+            if ( entry.generation != generation )
+            {
+                entries.remove( entry.sprite );
+            }
+            else if ( !entry.moved )
+            {
+                order[ keptCount++ ] = entry;
+            }
+        }
+        Arrays.fill( order, keptCount, entryCount, null );
+
+        /**
+         * The rest is nearly sorted, the marked ones are sorted from scratch
+         */
+        insertionSort( order, keptCount );
+        Arrays.sort( moved, 0, movedCount, ENTRY_ORDER );
+        merge( keptCount, movedCount );
+        Arrays.fill( moved, 0, movedCount, null );
+    }
+
+    /**
+     * Sort entries on their left edge, then on their place in the sprite list
+     * 
+     * @param array
+     * @param count
+     */
+    private static void insertionSort( Entry [ ] array, int count )
+    {
+        for ( int index = 1; index < count; index++ )
+        {
+            Entry entry = array[ index ];
+            int position = index - 1;
+            while ( position >= 0 && precedes( entry, array[ position ] ) )
+            {
+                array[ position + 1 ] = array[ position ];
+                position--;
+            }
+            array[ position + 1 ] = entry;
+        }
+    }
+
+    /**
+     * Return true if the first entry sorts before the second
+     * 
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    private static boolean precedes( Entry first, Entry second )
+    {
+        return first.x < second.x || ( first.x == second.x && first.listIndex < second.listIndex );
+    }
+
+    /**
+     * Merge the sorted kept and moved entries into the order
+     * 
+     * @param keptCount
+     * @param movedCount
+     */
+    private void merge( int keptCount, int movedCount )
+    {
+        entryCount = keptCount + movedCount;
+        if ( movedCount == 0 )
+        {
+            return;
+        }
+
+        if ( sorted.length < entryCount )
+        {
+            int capacity = sorted.length;
+            while ( capacity < entryCount )
+            {
+                capacity *= 2;
+            }
+            sorted = new Entry [ capacity ];
+            order = Arrays.copyOf( order, capacity );
+        }
+
+        int kept = 0;
+        int jumped = 0;
+        for ( int index = 0; index < entryCount; index++ )
+        {
+            if ( jumped == movedCount || ( kept < keptCount && precedes( order[ kept ], moved[ jumped ] ) ) )
+            {
+                sorted[ index ] = order[ kept++ ];
+            }
+            else
+            {
+                sorted[ index ] = moved[ jumped++ ];
+            }
+        }
+
+        /**
+         * Swap the buffers so the merged entries become the order
+         */
+        Entry [ ] swap = order;
+        order = sorted;
+        sorted = swap;
+        Arrays.fill( sorted, 0, keptCount, null );
+    }
+}
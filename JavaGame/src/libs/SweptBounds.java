@@ -0,0 +1,153 @@
+package libs;
+
+import java.awt.Rectangle;
+
+/**
+ * Swept bounding box tests. A swept collider moves its bounds from the
+ * previous bounds to the current bounds during a tick, any other sprite is
+ * taken to stand still at its current bounds.
+ * 
+ * @author williamhooper
+ */
+public final class SweptBounds
+{
+    /**
+     * Time of impact returned when two sprites do not touch during the tick
+     */
+    public static final double NO_IMPACT = -1.0;
+
+    /**
+     * Static methods only
+     */
+    private SweptBounds( )
+    {}
+
+    /**
+     * Return the bounds a sprite covers during its last move. For a sprite
+     * that is not a swept collider that is its bounds, for a swept collider
+     * the box around its previous and current bounds, stored in the passed
+     * rectangle.
+     * 
+     * @param sprite
+     * @param swept
+     * @return Rectangle
+     */
+    public static Rectangle getSweptBounds( Sprite sprite, Rectangle swept )
+    {
+        Rectangle bounds = sprite.getBounds();
+        if ( bounds == null || !( sprite instanceof SweptCollider ) )
+        {
+            return bounds;
+        }
+
+        Rectangle previous = ( ( SweptCollider ) sprite ).getPreviousBounds();
+        if ( previous == null || previous.isEmpty() )
+        {
+            return bounds;
+        }
+
+        int left = Math.min( bounds.x, previous.x );
+        int top = Math.min( bounds.y, previous.y );
+        swept.setBounds( left, top, Math.max( bounds.x + bounds.width, previous.x + previous.width ) - left,
+                Math.max( bounds.y + bounds.height, previous.y + previous.height ) - top );
+        return swept;
+    }
+
+    /**
+     * Return the fraction of the tick, from 0 to 1, at which the bounds of two
+     * sprites first overlap, or NO_IMPACT if they do not overlap during the
+     * tick. Sprites that overlap from the start have a time of impact of 0.
+     * 
+     * @param first
+     * @param second
+     * @return double
+     */
+    public static double timeOfImpact( Sprite first, Sprite second )
+    {
+        Rectangle firstFrom = getPreviousBounds( first );
+        Rectangle firstTo = first.getBounds();
+        Rectangle secondFrom = getPreviousBounds( second );
+        Rectangle secondTo = second.getBounds();
+
+        /**
+         * Move the first sprite relative to the second one standing still at
+         * its previous bounds
+         */
+        double deltaX = ( firstTo.x - firstFrom.x ) - ( secondTo.x - secondFrom.x );
+        double deltaY = ( firstTo.y - firstFrom.y ) - ( secondTo.y - secondFrom.y );
+
+        double enterX;
+        double leaveX;
+        if ( deltaX == 0 )
+        {
+            if ( firstFrom.x >= secondFrom.x + secondFrom.width || secondFrom.x >= firstFrom.x + firstFrom.width )
+            {
+                return NO_IMPACT;
+            }
+            enterX = Double.NEGATIVE_INFINITY;
+            leaveX = Double.POSITIVE_INFINITY;
+        }
+        else if ( deltaX > 0 )
+        {
+            enterX = ( secondFrom.x - ( firstFrom.x + firstFrom.width ) ) / deltaX;
+            leaveX = ( secondFrom.x + secondFrom.width - firstFrom.x ) / deltaX;
+        }
+        else
+        {
+            enterX = ( secondFrom.x + secondFrom.width - firstFrom.x ) / deltaX;
+            leaveX = ( secondFrom.x - ( firstFrom.x + firstFrom.width ) ) / deltaX;
+        }
+
+        double enterY;
+        double leaveY;
+        if ( deltaY == 0 )
+        {
+            if ( firstFrom.y >= secondFrom.y + secondFrom.height || secondFrom.y >= firstFrom.y + firstFrom.height )
+            {
+                return NO_IMPACT;
+            }
+            enterY = Double.NEGATIVE_INFINITY;
+            leaveY = Double.POSITIVE_INFINITY;
+        }
+        else if ( deltaY > 0 )
+        {
+            enterY = ( secondFrom.y - ( firstFrom.y + firstFrom.height ) ) / deltaY;
+            leaveY = ( secondFrom.y + secondFrom.height - firstFrom.y ) / deltaY;
+        }
+        else
+        {
+            enterY = ( secondFrom.y + secondFrom.height - firstFrom.y ) / deltaY;
+            leaveY = ( secondFrom.y - ( firstFrom.y + firstFrom.height ) ) / deltaY;
+        }
+
+        /**
+         * The boxes overlap while they overlap on both axes
+         */
+        double enter = Math.max( enterX, enterY );
+        double leave = Math.min( leaveX, leaveY );
+        if ( enter >= leave || enter >= 1.0 || leave <= 0.0 )
+        {
+            return NO_IMPACT;
+        }
+        return Math.max( enter, 0.0 );
+    }
+
+    /**
+     * Return the bounds of a sprite at the start of the tick
+     * 
+     * @param sprite
+     * @return Rectangle
+     */
+    private static Rectangle getPreviousBounds( Sprite sprite )
+    {
+        if ( sprite instanceof SweptCollider )
+        {
+            Rectangle previous = ( ( SweptCollider ) sprite ).getPreviousBounds();
+            if ( previous != null && !previous.isEmpty() )
+            {
+                return previous;
+            }
+        }
+        return sprite.getBounds();
+    }
+}
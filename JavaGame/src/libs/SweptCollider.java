@@ -0,0 +1,24 @@
+package libs;
+
+import java.awt.Rectangle;
+
+/**
+ * Swept collider. A fast sprite implements this interface so collisions are
+ * checked along the whole of its last move and not only where it ended up.
+ * The broadphase covers the box from the previous bounds to the current
+ * bounds, and a continuous collision pass reports the time of impact of each
+ * contact along the move.
+ * 
+ * @author williamhooper
+ */
+
+public interface SweptCollider
+{
+    /**
+     * Return the bounding box the sprite had before its last move. The
+     * rectangle may be the sprite's own, so callers must not change it.
+     * 
+     * @return Rectangle
+     */
+    public Rectangle getPreviousBounds();
+}
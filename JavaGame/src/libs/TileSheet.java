@@ -4,12 +4,14 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 /**
- * Class to manage tile sheets
+ * Class to manage tile sheets. A collision mask is made for every tile from
+ * its alpha channel when the sheet is created.
  * 
  * @author williamhooper
  */
 public class TileSheet
 {
+    private CollisionMask [ ] collisionMasks;
     private BufferedImage image;
 
     private int tileHeight;
@@ -32,6 +34,7 @@ public class TileSheet
         {
             throw new RuntimeException( "Image dimensions do not match the tile width and height" );
         }
+        createCollisionMasks();
     }
 
     /**
@@ -53,6 +56,19 @@ public class TileSheet
         {
             throw new RuntimeException( "Image dimensions do not match the tile width and height" );
         }
+        createCollisionMasks();
+    }
+
+    /**
+     * Return the collision mask of a tile
+     * 
+     * @param row
+     * @param column
+     * @return CollisionMask
+     */
+    public CollisionMask getCollisionMask( int row, int column )
+    {
+        return collisionMasks[ row * getNumberColumns() + column ];
     }
 
     /**
@@ -106,4 +122,25 @@ public class TileSheet
     {
         return tileWidth;
     }
+
+    /**
+     * Make the collision mask of every tile from the alpha channel
+     */
+    private void createCollisionMasks()
+    {
+        int columns = getNumberColumns();
+        int rows = getNumberRows();
+        int [ ] argb = new int [ tileWidth * tileHeight ];
+
+        collisionMasks = new CollisionMask [ rows * columns ];
+        for ( int row = 0; row < rows; row++ )
+        {
+            for ( int column = 0; column < columns; column++ )
+            {
+                image.getRGB( column * tileWidth, row * tileHeight, tileWidth, tileHeight, argb, 0, tileWidth );
+                collisionMasks[ row * columns + column ] = new CollisionMask( argb, 0, tileWidth, tileWidth, tileHeight,
+                        CollisionMask.DEFAULT_ALPHA_THRESHOLD );
+            }
+        }
+    }
 }
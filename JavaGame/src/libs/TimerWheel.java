@@ -0,0 +1,393 @@
+package libs;
+
+import java.util.ArrayList;
+
+/**
+ * Hierarchical timer wheel driven by the game engine tick. Timers are kept in
+ * four levels of 64 slots; a timer due within 64 ticks sits in the slot for
+ * its tick on the lowest level, later timers sit in coarser slots on higher
+ * levels and are moved down as their time comes closer. Scheduling and
+ * cancelling a timer take constant time, and advancing the wheel only looks
+ * at the timers that are due.
+ * 
+ * The game engine advances its timer wheel once per simulation tick, right
+ * after the game events for the tick are handled, and runs the expired timers
+ * on the game engine thread.
+ * 
+ * @author williamhooper
+ */
+public class TimerWheel
+{
+    /**
+     * A scheduled action. Returned by the schedule methods so the action can
+     * be cancelled.
+     * 
+     * @author williamhooper
+     * 
+     */
+    public static final class Timer
+    {
+        private final Runnable action;
+        private boolean cancelled;
+        private long deadline;
+        private int level;
+        private Timer next;
+        private final TimerWheel owner;
+        private boolean pending;
+        private final long period;
+        private Timer previous;
+        private int slot;
+
+        /**
+         * Constructor
+         * 
+         * @param owner
+         * @param action
+         * @param period
+         */
+        private Timer( TimerWheel owner, Runnable action, long period )
+        {
+            this.owner = owner;
+            this.action = action;
+            this.period = period;
+        }
+
+        /**
+         * Cancel the timer. Does nothing if the timer already expired or was
+         * cancelled.
+         * 
+         */
+        public void cancel()
+        {
+            owner.cancel( this );
+        }
+
+        /**
+         * Return the tick the timer expires on
+         * 
+         * @return long
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+
+        /**
+         * Return true if the timer is waiting to expire
+         * 
+         * @return boolean
+         */
+        public boolean isPending()
+        {
+            synchronized ( owner )
+            {
+                return pending && !cancelled;
+            }
+        }
+    }
+
+    /**
+     * Number of levels and slots per level
+     */
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Furthest ahead a timer can be placed directly; later timers are parked
+     * on the top level and placed again when it cascades
+     */
+    private static final long MAX_DELAY = 1L << ( SLOT_BITS * LEVELS );
+
+    private long currentTick;
+    private final ArrayList< Timer > expired = new ArrayList< Timer >();
+    private int pendingCount;
+    private final Timer [ ][ ] slots = new Timer [ LEVELS ][ SLOTS ];
+
+    /**
+     * Constructor
+     * 
+     */
+    public TimerWheel( )
+    {
+        currentTick = 0;
+    }
+
+    /**
+     * Advance the wheel by one tick and run the timers that expire on it.
+     * Timers run outside the wheel's lock, so they can schedule and cancel
+     * timers.
+     * 
+     */
+    public void advance()
+    {
+        synchronized ( this )
+        {
+            currentTick++;
+
+            /**
+             * Move the timers of the next coarser slot down whenever a level
+             * wraps around
+             */
+            for ( int level = 1; level < LEVELS; level++ )
+            {
+                if ( ( currentTick & ( ( 1L << ( SLOT_BITS * level ) ) - 1 ) ) != 0 )
+                {
+                    break;
+                }
+                cascade( level, ( int ) ( ( currentTick >> ( SLOT_BITS * level ) ) & SLOT_MASK ) );
+            }
+
+            /**
+             * Everything in the current slot of the lowest level is due
+             */
+            int slot = ( int ) ( currentTick & SLOT_MASK );
+            Timer timer = slots[ 0 ][ slot ];
+            slots[ 0 ][ slot ] = null;
+            while ( timer != null )
+            {
+                Timer next = timer.next;
+                timer.next = null;
+                timer.previous = null;
+                expired.add( timer );
+                timer = next;
+            }
+        }
+
+        if ( expired.isEmpty() )
+        {
+            return;
+        }
+
+        for ( int index = 0; index < expired.size(); index++ )
+        {
+            Timer timer = expired.get( index );
+
+            /**
+             * An earlier timer of this tick may have cancelled this one
+             */
+            synchronized ( this )
+            {
+                if ( timer.cancelled )
+                {
+                    continue;
+                }
+            }
+            timer.action.run();
+
+            /**
+             * Put a repeating timer back unless its action cancelled it,
+             * otherwise the timer is done
+             */
+            synchronized ( this )
+            {
+                if ( timer.period > 0 && !timer.cancelled )
+                {
+                    timer.deadline += timer.period;
+                    pendingCount--;
+                    insert( timer );
+                }
+                else if ( timer.pending )
+                {
+                    timer.pending = false;
+                    pendingCount--;
+                }
+            }
+        }
+
+        synchronized ( this )
+        {
+            expired.clear();
+        }
+    }
+
+    /**
+     * Return the current tick of the wheel
+     * 
+     * @return long
+     */
+    public synchronized long getCurrentTick()
+    {
+        return currentTick;
+    }
+
+    /**
+     * Return the number of timers waiting to expire
+     * 
+     * @return int
+     */
+    public synchronized int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    /**
+     * Schedule a game event to be dispatched after a number of ticks. The event
+     * is dispatched on the game engine thread.
+     * 
+     * @param delayTicks
+     * @param ge
+     * @return Timer
+     */
+    public Timer schedule( long delayTicks, final GameEvent ge )
+    {
+        return schedule( delayTicks, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                GameEventDispatcher.dispatchEvent( ge );
+            }
+        } );
+    }
+
+    /**
+     * Schedule an action to run once after a number of ticks. A delay of 0 runs
+     * the action on the next tick.
+     * 
+     * @param delayTicks
+     * @param action
+     * @return Timer
+     */
+    public Timer schedule( long delayTicks, Runnable action )
+    {
+        return scheduleRepeating( delayTicks, 0, action );
+    }
+
+    /**
+     * Schedule an action to run after a number of ticks, then every period
+     * ticks until it is cancelled. A period of 0 runs the action only once.
+     * 
+     * @param delayTicks
+     * @param periodTicks
+     * @param action
+     * @return Timer
+     */
+    public synchronized Timer scheduleRepeating( long delayTicks, long periodTicks, Runnable action )
+    {
+        if ( delayTicks < 0 || periodTicks < 0 )
+        {
+            throw new IllegalArgumentException( "Timer delay and period must not be negative" );
+        }
+        if ( action == null )
+        {
+            throw new IllegalArgumentException( "Timer action must not be null" );
+        }
+
+        Timer timer = new Timer( this, action, periodTicks );
+        timer.deadline = currentTick + Math.max( 1L, delayTicks );
+        insert( timer );
+        return timer;
+    }
+
+    /**
+     * Cancel a timer
+     * 
+     * @param timer
+     */
+    private synchronized void cancel( Timer timer )
+    {
+        if ( timer.cancelled || !timer.pending )
+        {
+            return;
+        }
+
+        /**
+         * A timer that expired this tick is not in a slot any more; marking it
+         * cancelled keeps it from running or being put back
+         */
+        if ( !expired.contains( timer ) )
+        {
+            unlink( timer );
+        }
+        timer.cancelled = true;
+        timer.pending = false;
+        pendingCount--;
+    }
+
+    /**
+     * Move the timers of a slot to the slots they belong in now
+     * 
+     * @param level
+     * @param slot
+     */
+    private void cascade( int level, int slot )
+    {
+        Timer timer = slots[ level ][ slot ];
+        slots[ level ][ slot ] = null;
+        while ( timer != null )
+        {
+            Timer next = timer.next;
+            pendingCount--;
+            insert( timer );
+            timer = next;
+        }
+    }
+
+    /**
+     * Put a timer in the slot for its deadline
+     * 
+     * @param timer
+     */
+    private void insert( Timer timer )
+    {
+        long delay = Math.max( 0L, timer.deadline - currentTick );
+        int level;
+        int slot;
+
+        if ( delay >= MAX_DELAY )
+        {
+            /**
+             * Park the timer in the top level slot that cascades last
+             */
+            level = LEVELS - 1;
+            slot = ( int ) ( ( ( currentTick >> ( SLOT_BITS * level ) ) + SLOT_MASK ) & SLOT_MASK );
+        }
+        else
+        {
+            long deadline = currentTick + delay;
+            level = 0;
+            while ( delay >= ( 1L << ( SLOT_BITS * ( level + 1 ) ) ) )
+            {
+                level++;
+            }
+            slot = ( int ) ( ( deadline >> ( SLOT_BITS * level ) ) & SLOT_MASK );
+        }
+
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = slots[ level ][ slot ];
+        if ( timer.next != null )
+        {
+            timer.next.previous = timer;
+        }
+        slots[ level ][ slot ] = timer;
+        timer.pending = true;
+        pendingCount++;
+    }
+
+    /**
+     * Take a timer out of its slot
+     * 
+     * @param timer
+     */
+    private void unlink( Timer timer )
+    {
+        if ( timer.previous != null )
+        {
+            timer.previous.next = timer.next;
+        }
+        else
+        {
+            slots[ timer.level ][ timer.slot ] = timer.next;
+        }
+        if ( timer.next != null )
+        {
+            timer.next.previous = timer.previous;
+        }
+        timer.next = null;
+        timer.previous = null;
+    }
+}
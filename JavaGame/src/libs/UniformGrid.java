@@ -0,0 +1,320 @@
+package libs;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Uniform grid broadphase. The game area is cut into square cells and every
+ * sprite is entered in the cells its bounds cover, kept in a hash table so the
+ * grid needs no fixed size and sprites may leave the display. Only sprites
+ * that share a cell are tested against each other, which keeps the work close
+ * to linear in the number of sprites as long as the cell size is about the
+ * size of the common sprites.
+ * 
+ * Sprites whose collision filter keeps them out of collisions are left out of
+ * the grid, and pairs whose filters do not match are skipped before their
+ * bounds are compared.
+ * 
+ * The grid is rebuilt from Sprite.getBounds() on every update. A swept
+ * collider is entered with the box it covered during its last move. It keeps its
+ * arrays between updates, so a steady number of sprites does not allocate.
+ * 
+ * @author williamhooper
+ */
+public class UniformGrid implements Broadphase
+{
+    /**
+     * Number of sprites and cell entries room is made for at first
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Hash table slots per cell entry, so buckets stay short
+     */
+    private static final int LOAD_FACTOR = 2;
+
+    private int [ ] boundsHeight;
+    private int [ ] boundsWidth;
+    private int [ ] boundsX;
+    private int [ ] boundsY;
+    private int [ ] bucketHeads;
+    private int bucketMask;
+    private int [ ] categories;
+    private final int cellSize;
+    private int [ ] entryCellX;
+    private int [ ] entryCellY;
+    private int entryCount;
+    private int [ ] entryNext;
+    private int [ ] entrySprite;
+    private int [ ] masks;
+    private int [ ] maxCellX;
+    private int [ ] maxCellY;
+    private int [ ] minCellX;
+    private int [ ] minCellY;
+    private int pairCount;
+    private int spriteCount;
+    private Sprite [ ] sprites;
+    private final Rectangle sweptBounds = new Rectangle();
+
+    /**
+     * Constructor
+     * 
+     * @param cellSize
+     *            width and height of a cell in pixels
+     */
+    public UniformGrid( int cellSize )
+    {
+        if ( cellSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Cell size must be positive" );
+        }
+        this.cellSize = cellSize;
+
+        sprites = new Sprite [ INITIAL_CAPACITY ];
+        boundsX = new int [ INITIAL_CAPACITY ];
+        boundsY = new int [ INITIAL_CAPACITY ];
+        boundsWidth = new int [ INITIAL_CAPACITY ];
+        boundsHeight = new int [ INITIAL_CAPACITY ];
+        categories = new int [ INITIAL_CAPACITY ];
+        masks = new int [ INITIAL_CAPACITY ];
+        minCellX = new int [ INITIAL_CAPACITY ];
+        minCellY = new int [ INITIAL_CAPACITY ];
+        maxCellX = new int [ INITIAL_CAPACITY ];
+        maxCellY = new int [ INITIAL_CAPACITY ];
+
+        entrySprite = new int [ INITIAL_CAPACITY ];
+        entryCellX = new int [ INITIAL_CAPACITY ];
+        entryCellY = new int [ INITIAL_CAPACITY ];
+        entryNext = new int [ INITIAL_CAPACITY ];
+
+        bucketHeads = new int [ INITIAL_CAPACITY * LOAD_FACTOR ];
+        bucketMask = bucketHeads.length - 1;
+    }
+
+    @Override
+    public void findPairs( CollisionPairListener listener )
+    {
+        pairCount = 0;
+
+        for ( int first = 0; first < spriteCount; first++ )
+        {
+            for ( int cellY = minCellY[ first ]; cellY <= maxCellY[ first ]; cellY++ )
+            {
+                for ( int cellX = minCellX[ first ]; cellX <= maxCellX[ first ]; cellX++ )
+                {
+                    for ( int entry = bucketHeads[ hash( cellX, cellY ) ]; entry != -1; entry = entryNext[ entry ] )
+                    {
+                        int second = entrySprite[ entry ];
+
+                        /**
+                         * Each pair is looked at from its first sprite only,
+                         * and only in the first cell the two sprites share,
+                         * so it is reported once however many cells they
+                         * share
+                         */
+                        if ( second <= first || entryCellX[ entry ] != cellX || entryCellY[ entry ] != cellY )
+                        {
+                            continue;
+                        }
+                        if ( cellX != Math.max( minCellX[ first ], minCellX[ second ] )
+                                || cellY != Math.max( minCellY[ first ], minCellY[ second ] ) )
+                        {
+                            continue;
+                        }
+
+                        if ( interacts( first, second ) && overlaps( first, second ) )
+                        {
+                            pairCount++;
+                            listener.collisionPair( sprites[ first ], sprites[ second ] );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the width and height of a cell in pixels
+     * 
+     * @return int
+     */
+    public int getCellSize()
+    {
+        return cellSize;
+    }
+
+    @Override
+    public int getPairCount()
+    {
+        return pairCount;
+    }
+
+    @Override
+    public void update( Collection< ? extends Sprite > spriteCollection )
+    {
+        int lastSpriteCount = spriteCount;
+        spriteCount = 0;
+        entryCount = 0;
+
+        /**
+         * Take the bounds and covered cells of every sprite
+         */
+        for ( Sprite sprite : spriteCollection )
+        {
+            int category = CollisionFilter.ALL_CATEGORIES;
+            int mask = CollisionFilter.ALL_CATEGORIES;
+            if ( sprite instanceof CollisionFilter )
+            {
+                category = ( ( CollisionFilter ) sprite ).getCollisionCategory();
+                mask = ( ( CollisionFilter ) sprite ).getCollisionMask();
+                if ( category == 0 || mask == 0 )
+                {
+                    continue;
+                }
+            }
+
+            Rectangle bounds = SweptBounds.getSweptBounds( sprite, sweptBounds );
+            if ( bounds == null || bounds.isEmpty() )
+            {
+                continue;
+            }
+
+            if ( spriteCount == sprites.length )
+            {
+                growSprites();
+            }
+
+            int index = spriteCount++;
+            sprites[ index ] = sprite;
+            categories[ index ] = category;
+            masks[ index ] = mask;
+            boundsX[ index ] = bounds.x;
+            boundsY[ index ] = bounds.y;
+            boundsWidth[ index ] = bounds.width;
+            boundsHeight[ index ] = bounds.height;
+            minCellX[ index ] = Math.floorDiv( bounds.x, cellSize );
+            minCellY[ index ] = Math.floorDiv( bounds.y, cellSize );
+            maxCellX[ index ] = Math.floorDiv( bounds.x + bounds.width - 1, cellSize );
+            maxCellY[ index ] = Math.floorDiv( bounds.y + bounds.height - 1, cellSize );
+            entryCount += ( maxCellX[ index ] - minCellX[ index ] + 1 ) * ( maxCellY[ index ] - minCellY[ index ] + 1 );
+        }
+
+        /**
+         * Let go of sprites that were removed from the game
+         */
+        if ( spriteCount < lastSpriteCount )
+        {
+            Arrays.fill( sprites, spriteCount, lastSpriteCount, null );
+        }
+
+        if ( entryCount > entrySprite.length )
+        {
+            growEntries( entryCount );
+        }
+        Arrays.fill( bucketHeads, -1 );
+
+        /**
+         * Enter every sprite in the cells it covers
+         */
+        int entry = 0;
+        for ( int index = 0; index < spriteCount; index++ )
+        {
+            for ( int cellY = minCellY[ index ]; cellY <= maxCellY[ index ]; cellY++ )
+            {
+                for ( int cellX = minCellX[ index ]; cellX <= maxCellX[ index ]; cellX++ )
+                {
+                    int bucket = hash( cellX, cellY );
+                    entrySprite[ entry ] = index;
+                    entryCellX[ entry ] = cellX;
+                    entryCellY[ entry ] = cellY;
+                    entryNext[ entry ] = bucketHeads[ bucket ];
+                    bucketHeads[ bucket ] = entry;
+                    entry++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Make room for at least the given number of cell entries
+     * 
+     * @param count
+     */
+    private void growEntries( int count )
+    {
+        int capacity = entrySprite.length;
+        while ( capacity < count )
+        {
+            capacity *= 2;
+        }
+
+        entrySprite = new int [ capacity ];
+        entryCellX = new int [ capacity ];
+        entryCellY = new int [ capacity ];
+        entryNext = new int [ capacity ];
+
+        bucketHeads = new int [ capacity * LOAD_FACTOR ];
+        bucketMask = bucketHeads.length - 1;
+    }
+
+    /**
+     * Double the room for sprites
+     */
+    private void growSprites()
+    {
+        int capacity = sprites.length * 2;
+        sprites = Arrays.copyOf( sprites, capacity );
+        boundsX = Arrays.copyOf( boundsX, capacity );
+        boundsY = Arrays.copyOf( boundsY, capacity );
+        boundsWidth = Arrays.copyOf( boundsWidth, capacity );
+        boundsHeight = Arrays.copyOf( boundsHeight, capacity );
+        categories = Arrays.copyOf( categories, capacity );
+        masks = Arrays.copyOf( masks, capacity );
+        minCellX = Arrays.copyOf( minCellX, capacity );
+        minCellY = Arrays.copyOf( minCellY, capacity );
+        maxCellX = Arrays.copyOf( maxCellX, capacity );
+        maxCellY = Arrays.copyOf( maxCellY, capacity );
+    }
+
+    /**
+     * Return the hash table bucket of a cell
+     * 
+     * @param cellX
+     * @param cellY
+     * @return int
+     */
+    private int hash( int cellX, int cellY )
+    {
+        int hash = cellX * 0x9E3779B1 ^ cellY * 0x85EBCA6B;
+        return ( hash ^ ( hash >>> 16 ) ) & bucketMask;
+    }
+
+    /**
+     * Return true if the collision filters of two sprites let them collide
+     * 
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    private boolean interacts( int first, int second )
+    {
+        return ( categories[ first ] & masks[ second ] ) != 0 && ( categories[ second ] & masks[ first ] ) != 0;
+    }
+
+    /**
+     * Return true if the bounds of two sprites overlap, the same test as
+     * Rectangle.intersects
+     * 
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    private boolean overlaps( int first, int second )
+    {
+        return boundsX[ first ] < boundsX[ second ] + boundsWidth[ second ]
+                && boundsX[ second ] < boundsX[ first ] + boundsWidth[ first ]
+                && boundsY[ first ] < boundsY[ second ] + boundsHeight[ second ]
+                && boundsY[ second ] < boundsY[ first ] + boundsHeight[ first ];
+    }
+}
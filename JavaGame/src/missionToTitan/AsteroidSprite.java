@@ -8,19 +8,34 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.io.IOException;
 
+import libs.ColliderShape;
+import libs.CollisionFilter;
+import libs.Contact;
+import libs.ContactListener;
+import libs.ContactTest;
+import libs.GameContext;
 import libs.GameDisplay;
+import libs.GameEngine;
 import libs.GameEvent;
 import libs.GameEvent.GameEventType;
 import libs.GameEventDispatcher;
+import libs.ShapedCollider;
 import libs.Sprite;
 import libs.TileSheet;
 
-public class AsteroidSprite implements Sprite
+public class AsteroidSprite implements Sprite, CollisionFilter, ContactListener, ContactTest, ShapedCollider
 {
     private double xPos, yPos;
     private double xVel, yVel;
     private Rectangle asteroidShape, displayBounds;
-    private long nextTimeUpdate;
+
+    /**
+     * Circle around the visible asteroid, so the corners of the tile do not
+     * collide
+     */
+    private ColliderShape colliderShape = new ColliderShape();
+    private long spawnTick;
+    private long frameTicks;
     private int row = 0, column = 0;
     private Size size;
     private TileSheet asteroidTileSheet;
@@ -30,6 +45,24 @@ public class AsteroidSprite implements Sprite
         LARGE, MEDIUM, SMALL
     }
 
+    /**
+     * Tile sheets of the asteroid sizes, loaded once and shared, since making
+     * the collision masks of a sheet is too slow to do per asteroid. The
+     * holder class loads them the first time an asteroid is made; class
+     * initialization makes that safe when several games make asteroids at
+     * once.
+     */
+    private static final class TileSheets
+    {
+        private static final TileSheet [ ] asteroidTileSheets = loadTileSheets();
+
+        /**
+         * Private constructor, an instance only locates the image files
+         */
+        private TileSheets( )
+        {}
+    }
+
     /*
      * Constructor, make new asteroid
      */
@@ -40,54 +73,41 @@ public class AsteroidSprite implements Sprite
         xVel = xv;
         yVel = yv;
         size = s;
-        try
-        {
-            switch ( s )
-            {
-                case LARGE:
-                    asteroidTileSheet = new TileSheet( this, "img/asteroidLarge.png", 174, 174 );
-                    break;
-                case MEDIUM:
-                    asteroidTileSheet = new TileSheet( this, "img/asteroidMedium.png", 64, 64 );
-                    break;
-                case SMALL:
-                    asteroidTileSheet = new TileSheet( this, "img/asteroidSmall.png", 32, 32 );
-                    break;
-            }
-        }
-        catch ( IOException ioe )
-        {
-
-        }
+        asteroidTileSheet = TileSheets.asteroidTileSheets[ s.ordinal() ];
         asteroidShape = new Rectangle( ( int ) xPos, ( int ) yPos, asteroidTileSheet.getTileWidth(),
                 asteroidTileSheet.getTileHeight() );
-        nextTimeUpdate = System.currentTimeMillis();
+        spawnTick = GameEngine.getTickCount();
+        frameTicks = GameEngine.millisToTicks( 50 );
         row = 0;
         column = 0;
         displayBounds = GameDisplay.getBounds();
+        updateColliderShape();
     }
 
     @Override
     public void checkCollision( Sprite obj )
     {
-        if ( obj instanceof PlayerSprite )
+        if ( obj instanceof PlayerSprite && hits( obj.getBounds() ) )
         {
-            if ( asteroidShape.intersects( obj.getBounds() ) )
-            {
-                /**
-                 * Dispatch an event to remove the asteroid
-                 */
-                GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, this ) );
-            }
+            collide();
         }
+    }
 
+    @Override
+    public void contact( Contact contact )
+    {
+        collide();
+    }
+
+    @Override
+    public boolean testContact( Sprite other, double timeOfImpact )
+    {
+        return other instanceof PlayerSprite && hits( other.getBounds() );
     }
 
     @Override
     public void draw( Graphics2D g )
     {
-        asteroidShape.x = ( int ) xPos;
-        asteroidShape.y = ( int ) yPos;
         AffineTransform transform = AffineTransform.getTranslateInstance( xPos, yPos );
         g.drawImage( asteroidTileSheet.getTile( row, column ), transform, null );
 
@@ -99,13 +119,31 @@ public class AsteroidSprite implements Sprite
         return asteroidShape;
     }
 
+    @Override
+    public ColliderShape getColliderShape()
+    {
+        return colliderShape;
+    }
+
+    @Override
+    public int getCollisionCategory()
+    {
+        return CollisionCategory.ASTEROID;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return CollisionCategory.PLAYER | CollisionCategory.PLAYER_MISSILE;
+    }
+
     @Override
     public void update()
     {
         if ( xVel * xVel + yVel * yVel < 1 )
         {
-            xVel += Math.random() * 2 - 1;
-            yVel += Math.random() * 2 - 1;
+            xVel += GameContext.current().getRandom().nextDouble() * 2 - 1;
+            yVel += GameContext.current().getRandom().nextDouble() * 2 - 1;
         }
         xPos += xVel;
         yPos += yVel;
@@ -123,17 +161,16 @@ public class AsteroidSprite implements Sprite
         else if ( yPos > displayBounds.height + asteroidShape.height )
             yPos = 0 - asteroidShape.height;
 
-        if ( nextTimeUpdate < System.currentTimeMillis() )
-        {
-            column++;
-            if ( column == 4 )
-            {
-                row++;
-                column = 0;
-            }
-            row %= 4;
-            nextTimeUpdate = System.currentTimeMillis() + 50;
-        }
+        asteroidShape.x = ( int ) xPos;
+        asteroidShape.y = ( int ) yPos;
+
+        /**
+         * Step through the 4 by 4 animation tiles every 50 ms of game time
+         */
+        long frame = ( GameEngine.getTickCount() - spawnTick ) / frameTicks;
+        column = ( int ) ( frame % 4 );
+        row = ( int ) ( ( frame / 4 ) % 4 );
+        updateColliderShape();
     }
 
     @Override
@@ -150,6 +187,53 @@ public class AsteroidSprite implements Sprite
 
     }
 
+    /**
+     * The asteroid ran into the player
+     */
+    private void collide()
+    {
+        /**
+         * Dispatch an event to remove the asteroid
+         */
+        GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, this ) );
+    }
+
+    /**
+     * Fit the collider shape around the solid pixels of the current tile
+     */
+    private void updateColliderShape()
+    {
+        colliderShape.setCircle( asteroidShape.getCenterX(), asteroidShape.getCenterY(), asteroidTileSheet
+                .getCollisionMask( row, column ).getRadius() );
+    }
+
+    /**
+     * Return true if the visible asteroid touches the rectangle. The bounding
+     * box is checked first, then the collision mask of the current tile.
+     * 
+     * @param rect
+     * @return boolean
+     */
+    public boolean hits( Rectangle rect )
+    {
+        return hits( rect.x, rect.y, rect.width, rect.height );
+    }
+
+    /**
+     * Return true if the visible asteroid touches the rectangle at x,y
+     * 
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @return boolean
+     */
+    public boolean hits( int x, int y, int width, int height )
+    {
+        return asteroidTileSheet.getCollisionMask( row, column ).intersects( asteroidShape.x, asteroidShape.y, x, y,
+                width, height );
+    }
+
     public Size getSize()
     {
         return size;
@@ -171,4 +255,21 @@ public class AsteroidSprite implements Sprite
                                                                                   * 2
                                                                                   */);
     }
+
+    private static TileSheet [ ] loadTileSheets()
+    {
+        TileSheet [ ] tileSheets = new TileSheet [ Size.values().length ];
+        TileSheets ts = new TileSheets();
+        try
+        {
+            tileSheets[ Size.LARGE.ordinal() ] = new TileSheet( ts, "img/asteroidLarge.png", 174, 174 );
+            tileSheets[ Size.MEDIUM.ordinal() ] = new TileSheet( ts, "img/asteroidMedium.png", 64, 64 );
+            tileSheets[ Size.SMALL.ordinal() ] = new TileSheet( ts, "img/asteroidSmall.png", 32, 32 );
+        }
+        catch ( IOException ioe )
+        {
+            GameEngine.stop();
+        }
+        return tileSheets;
+    }
 }
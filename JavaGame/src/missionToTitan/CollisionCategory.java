@@ -0,0 +1,21 @@
+package missionToTitan;
+
+/**
+ * Collision categories of the Mission to Titan sprites
+ * 
+ * @author williamhooper
+ * 
+ */
+public final class CollisionCategory
+{
+    public static final int PLAYER = 1 << 0;
+    public static final int PLAYER_MISSILE = 1 << 1;
+    public static final int ENEMY = 1 << 2;
+    public static final int ASTEROID = 1 << 3;
+
+    /**
+     * Constants only
+     */
+    private CollisionCategory( )
+    {}
+}
@@ -9,12 +9,15 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
+import libs.CollisionFilter;
 import libs.GameEngine;
 import libs.GameEvent;
 import libs.GameEvent.GameEventType;
 import libs.GameEventDispatcher;
 import libs.ImageUtil;
+import libs.LooseQuadtree;
 import libs.Sprite;
+import libs.SpriteVisitor;
 
 /**
  * Enemy sprite
@@ -25,7 +28,7 @@ import libs.Sprite;
  * @author williamhooper $Id: EnemySprite.java,v 1.4 2011/08/29 00:22:43
  *         williamhooper Exp $
  */
-public class EnemySprite implements Sprite
+public class EnemySprite implements Sprite, CollisionFilter
 {
     private double xPos;
     private double yPos;
@@ -34,20 +37,42 @@ public class EnemySprite implements Sprite
     private double maxVel;
     private double xVel;
     private double yVel;
-    private long nextUpdate;
     private Rectangle enemyShape;
     private int shield;
     private double angle;
     private PlayerSprite player;
     private Point playerPos;
+    private LooseQuadtree spriteIndex;
+    private PlayerSprite target;
     private static BufferedImage enemySprite;
 
+    /**
+     * Visitor that takes the player found by the nearest query as the target
+     */
+    private final SpriteVisitor targetVisitor = new SpriteVisitor()
+    {
+        @Override
+        public void visit( Sprite sprite )
+        {
+            if ( sprite instanceof PlayerSprite )
+            {
+                target = ( PlayerSprite ) sprite;
+            }
+        }
+    };
+
     /**
      * Constructor
      * 
      * @param ps
+     *            player to home on while no player is in the sprite index
+     * @param index
+     *            where the sprites are, to find the nearest player
+     * @param x
+     * @param y
+     * @param vel
      */
-    public EnemySprite( PlayerSprite ps, int x, int y, int vel )
+    public EnemySprite( PlayerSprite ps, LooseQuadtree index, int x, int y, int vel )
     {
         if ( enemySprite == null )
         {
@@ -59,16 +84,14 @@ public class EnemySprite implements Sprite
 
         enemyShape = new Rectangle( ( int ) xPos, ( int ) yPos, enemySprite.getWidth(), enemySprite.getHeight() );
         player = ps;
+        spriteIndex = index;
         angle = 0;
         shield = 100;
-        nextUpdate = System.currentTimeMillis();
     }
 
     @Override
     public void draw( Graphics2D g )
     {
-        enemyShape.x = ( int ) xPos;
-        enemyShape.y = ( int ) yPos;
         AffineTransform transform = AffineTransform.getTranslateInstance( xPos, yPos );
         transform.concatenate( AffineTransform.getRotateInstance( angle + Math.PI / 2, ( enemyShape.getWidth() / 2 ),
                 ( enemyShape.getHeight() / 2 ) ) );
@@ -83,27 +106,36 @@ public class EnemySprite implements Sprite
     @Override
     public void update()
     {
-        playerPos = player.getPos();
+        /**
+         * Home on the nearest player
+         */
+        target = player;
+        spriteIndex.findNearest( enemyShape.getCenterX(), enemyShape.getCenterY(), 1, Double.POSITIVE_INFINITY,
+                CollisionCategory.PLAYER, targetVisitor );
+        playerPos = target.getPos();
         lastX = xPos;
         xPos += xVel;
         yPos += yVel;
+        enemyShape.x = ( int ) xPos;
+        enemyShape.y = ( int ) yPos;
         angle = Math.tan( ( yPos - playerPos.y ) / ( xPos - playerPos.x ) );
-        if ( nextUpdate < System.currentTimeMillis() )
-        {
-            if ( playerPos.x == xPos )
-                xVel = 0;
-            else if ( playerPos.x > xPos )
-                xVel = maxVel;
-            else if ( playerPos.x < xPos )
-                xVel = 0 - maxVel;
-
-            if ( playerPos.y == yPos )
-                yVel = 0;
-            else if ( playerPos.y > yPos )
-                yVel = maxVel;
-            else if ( playerPos.y < yPos )
-                yVel = 0 - maxVel;
-        }
+
+        /**
+         * Steer towards the player
+         */
+        if ( playerPos.x == xPos )
+            xVel = 0;
+        else if ( playerPos.x > xPos )
+            xVel = maxVel;
+        else if ( playerPos.x < xPos )
+            xVel = 0 - maxVel;
+
+        if ( playerPos.y == yPos )
+            yVel = 0;
+        else if ( playerPos.y > yPos )
+            yVel = maxVel;
+        else if ( playerPos.y < yPos )
+            yVel = 0 - maxVel;
 
     }
 
@@ -116,7 +148,19 @@ public class EnemySprite implements Sprite
     @Override
     public Rectangle getBounds()
     {
-        return enemyShape.getBounds();
+        return enemyShape;
+    }
+
+    @Override
+    public int getCollisionCategory()
+    {
+        return CollisionCategory.ENEMY;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return CollisionCategory.PLAYER | CollisionCategory.PLAYER_MISSILE;
     }
 
     @Override
@@ -139,7 +183,7 @@ public class EnemySprite implements Sprite
         if ( shield < 0 ) // if shield is 0, destroy sprite
         {
             shield = 0;
-            GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, this ) );
+            GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, this ) );
         }
     }
 
@@ -3,26 +3,39 @@ package missionToTitan;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
 import libs.AudioMidi;
+import libs.CollisionPass;
+import libs.FrameGovernor.RenderQuality;
 import libs.Game;
+import libs.GameContext;
 import libs.GameDisplay;
 import libs.GameEngine;
 import libs.GameEvent;
 import libs.GameEvent.GameEventType;
 import libs.GameEventDispatcher;
+import libs.InterpolatedGame;
 import libs.ImageUtil;
+import libs.InputRecorder;
+import libs.InputReplay;
 import libs.KeyboardEventListener;
+import libs.LooseQuadtree;
 import libs.MouseEventListener;
 import libs.Sprite;
+import libs.TimerWheel;
+import libs.UniformGrid;
 import missionToTitan.AsteroidSprite.Size;
 
 /**
@@ -30,7 +43,7 @@ import missionToTitan.AsteroidSprite.Size;
  * 
  * @author Connor Elison
  */
-public class MissionToTitan implements Game, MouseEventListener, KeyboardEventListener
+public class MissionToTitan implements InterpolatedGame, MouseEventListener, KeyboardEventListener
 {
     enum GameState
     {
@@ -42,11 +55,31 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
      */
     private LinkedList< Sprite > spriteList;
 
+    /**
+     * Collision pass that finds the sprites whose bounds overlap and tells
+     * both sprites of each pair
+     */
+    private final CollisionPass collisionPass = new CollisionPass( new UniformGrid( COLLISION_CELL_SIZE ) );
+
+    /**
+     * Where the sprites are, for sprites that look for other sprites as they
+     * update
+     */
+    private LooseQuadtree spriteIndex;
+
+    /**
+     * Where each sprite was before the last update, for drawing it between
+     * its previous and current positions. Two maps are swapped every update
+     * so sprites that are gone drop out without allocating.
+     */
+    private IdentityHashMap< Sprite, Point > previousPositions = new IdentityHashMap< Sprite, Point >();
+    private IdentityHashMap< Sprite, Point > sparePositions = new IdentityHashMap< Sprite, Point >();
+
     /**
      * Paths for the enemys
      */
 
-    private long nextTime;
+    private TimerWheel.Timer enemyTimer;
     private long enemyCount;
     private int level;
     private ScoreSprite scoreSprite;
@@ -70,14 +103,47 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
     private static final int FINAL_LEVEL = 3;
 
     /**
-     * Main
+     * Collision grid cell size in pixels, about the size of a medium asteroid
+     * tile and the common sprites
+     */
+    private static final int COLLISION_CELL_SIZE = 128;
+
+    /**
+     * Main. Run with -headless [games] to simulate one or more games as fast as
+     * possible without a display, each starting straight from the first level.
      * 
      * @param args
      */
     public static void main( String [ ] args )
     {
+        if ( args.length > 0 && args[ 0 ].equals( "-headless" ) )
+        {
+            runHeadless( ( args.length > 1 ) ? Integer.parseInt( args[ 1 ] ) : 1 );
+            return;
+        }
+        else if ( args.length > 1 && args[ 0 ].equals( "-replay" ) )
+        {
+            runReplay( args[ 1 ] );
+            return;
+        }
+
         MissionToTitan game = new MissionToTitan();
 
+        /**
+         * Record the game if asked to
+         */
+        if ( args.length > 1 && args[ 0 ].equals( "-record" ) )
+        {
+            try
+            {
+                GameEngine.setInputRecorder( new InputRecorder( new FileOutputStream( args[ 1 ] ), System.nanoTime() ) );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e.getMessage() );
+            }
+        }
+
         GameEngine.start( game );
 
         /**
@@ -86,6 +152,82 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         GameDisplay.dispose();
     }
 
+    /**
+     * Simulate games on headless game contexts, each game on its own thread,
+     * until every game is over
+     * 
+     * @param games
+     */
+    private static void runHeadless( int games )
+    {
+        Thread [ ] gameThreads = new Thread [ games ];
+        for ( int index = 0; index < games; index++ )
+        {
+            gameThreads[ index ] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    GameContext context = new GameContext( 1280, 720 );
+                    context.bind();
+                    GameEngine.setUnthrottled( true );
+                    GameEngine.setRendering( false );
+
+                    MissionToTitan game = new MissionToTitan();
+                    game.manageGameEvent( new GameEvent( game, GameEventType.Start, game ) );
+                    context.start( game );
+                }
+            }, "game " + index );
+            gameThreads[ index ].start();
+        }
+
+        for ( Thread gameThread : gameThreads )
+        {
+            try
+            {
+                gameThread.join();
+            }
+            catch ( InterruptedException ie )
+            {}
+        }
+    }
+
+    /**
+     * Replay a recorded game on a headless game context as fast as possible
+     * and report whether the simulation matched the recording
+     * 
+     * @param filename
+     */
+    private static void runReplay( String filename )
+    {
+        InputReplay replay;
+        try
+        {
+            replay = new InputReplay( new FileInputStream( filename ) );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e.getMessage() );
+        }
+
+        GameContext context = new GameContext( 1280, 720 );
+        context.bind();
+        GameEngine.setUnthrottled( true );
+        GameEngine.setRendering( false );
+        GameEngine.setInputReplay( replay );
+
+        long startTime = System.nanoTime();
+        MissionToTitan game = new MissionToTitan();
+        context.start( game );
+        long elapsedTime = System.nanoTime() - startTime;
+
+        System.out.println( "Replayed " + context.getStats().getTickCount() + " ticks in " + ( elapsedTime / 1000000L ) + " ms" );
+        if ( replay.getDivergenceTick() != -1 )
+        {
+            System.out.println( "Replay diverged from the recording at tick " + replay.getDivergenceTick() );
+        }
+    }
+
     /**
      * Constructor
      */
@@ -103,6 +245,39 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
 
         currentGameState = GameState.SPLASH;
 
+        /**
+         * Handle game events and input on the game engine thread at tick
+         * boundaries, so the sprite list needs no locking, and merge the
+         * duplicate events sprites raise within a tick
+         */
+        GameEngine.setTickBoundaryEvents( true );
+        GameEngine.setEventCoalescing( true );
+
+        /**
+         * Update at the tick rate whatever the frame rate, and draw the
+         * sprites between ticks in render( double )
+         */
+        GameEngine.setFixedTimestep( true );
+
+        /**
+         * Only subscribe to the game events we handle below; Life and Menu
+         * are never raised
+         */
+        GameEngine.setGameEventTypes( GameEventType.AddFirst, GameEventType.AddLast, GameEventType.End,
+                GameEventType.Help, GameEventType.NextLevel, GameEventType.Pause, GameEventType.Quit,
+                GameEventType.Remove, GameEventType.Score, GameEventType.Start );
+
+        /**
+         * Check the missiles along their whole move, so they cannot pass
+         * through small asteroids between ticks
+         */
+        collisionPass.setContinuous( true );
+
+        /**
+         * Test large numbers of collision pairs on all cores
+         */
+        collisionPass.setParallel( true );
+
         /**
          * Add a mouse listener so we can get mouse events
          */
@@ -114,11 +289,6 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         GameDisplay.addKeyboardListener( this );
         GameDisplay.captureCursor( false );
 
-        /**
-         * Setup some variables for managing the enemies
-         */
-        nextTime = System.currentTimeMillis() + NextEnemyTime;
-
         /**
          * Set up initial sprites.
          */
@@ -131,9 +301,9 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         helpSprite = new SplashSprite( "img/help.png" ); // makeme
 
         playerSprite = new PlayerSprite();
-        nextTime = System.currentTimeMillis();
         spriteList.add( splashSprite );
         display = GameDisplay.getBounds();
+        spriteIndex = new LooseQuadtree( display );
         level = 0;
         currentGameState = GameState.SPLASH;
     }
@@ -142,23 +312,9 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
     public void collisions()
     {
         /**
-         * Check collisions on the Sprite objects
+         * Check collisions on the Sprite objects whose bounds overlap
          */
-
-        synchronized ( spriteList )
-        {
-            for ( Sprite spriteObj : spriteList )
-            {
-                for ( Sprite otherSprite : spriteList )
-                {
-                    if ( !otherSprite.equals( spriteObj ) )
-                    {
-                        spriteObj.checkCollision( otherSprite );
-                    }
-                }
-            }
-        }
-
+        collisionPass.run( spriteList );
     }
 
     @Override
@@ -172,21 +328,64 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
 
     @Override
     public void render()
+    {
+        render( 1.0 );
+    }
+
+    @Override
+    public void render( double interpolation )
     {
         /**
          * Get the current graphics
          */
         Graphics2D offscreenGraphics = ( Graphics2D ) GameDisplay.getContext();
+
+        /**
+         * Trade quality for speed while the game engine is overloaded,
+         * otherwise draw with the default hints. Sprites are drawn with
+         * nearest neighbour interpolation either way, the default.
+         */
+        if ( GameEngine.getRenderQuality() == RenderQuality.LOW )
+        {
+            offscreenGraphics.setRenderingHint( RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED );
+        }
+        else
+        {
+            offscreenGraphics.setRenderingHint( RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT );
+        }
         offscreenGraphics.drawImage( background, null, 0, 0 );
         /**
-         * Draw the Sprite objects
+         * Draw the Sprite objects between where they were before the last
+         * update and where they are now. A sprite that jumped further than
+         * half the display wrapped around or was placed, so it is drawn where
+         * it is.
          */
-        synchronized ( spriteList )
+        for ( Sprite spriteObj : spriteList )
         {
-            for ( Sprite spriteObj : spriteList )
+            Point previous = previousPositions.get( spriteObj );
+            int dx = 0;
+            int dy = 0;
+            if ( previous != null )
+            {
+                Rectangle bounds = spriteObj.getBounds();
+                if ( Math.abs( bounds.x - previous.x ) < display.width / 2
+                        && Math.abs( bounds.y - previous.y ) < display.height / 2 )
+                {
+                    dx = ( int ) Math.round( ( previous.x - bounds.x ) * ( 1.0 - interpolation ) );
+                    dy = ( int ) Math.round( ( previous.y - bounds.y ) * ( 1.0 - interpolation ) );
+                }
+            }
+
+            if ( dx == 0 && dy == 0 )
             {
                 spriteObj.draw( offscreenGraphics );
             }
+            else
+            {
+                offscreenGraphics.translate( dx, dy );
+                spriteObj.draw( offscreenGraphics );
+                offscreenGraphics.translate( -dx, -dy );
+            }
         }
         if ( currentGameState == GameState.END_OF_LEVEL )
             nextLevelSprite.draw( offscreenGraphics );
@@ -195,34 +394,25 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
     @Override
     public void update()
     {
+        recordPositions();
+
         if ( currentGameState != GameState.PAUSED )
         {
-            if ( currentGameState == GameState.PLAYING )
-                if ( nextTime < System.currentTimeMillis() && enemyCount < maxEnemyCount )
-                {
-                    synchronized ( spriteList )
-                    {
-                        releaseEnemy();
-                    }
-                }
-
             /**
-             * Update the Sprite objects
+             * Update the Sprite objects, after taking where they are now
              */
-            synchronized ( spriteList )
+            spriteIndex.update( spriteList );
+            boolean enemiesLeft = false;
+            for ( Sprite spriteObj : spriteList )
             {
-                boolean enemiesLeft = false;
-                for ( Sprite spriteObj : spriteList )
-                {
-                    if ( currentGameState == GameState.PLAYING )
-                        enemiesLeft = enemiesLeft || ( spriteObj instanceof AsteroidSprite || spriteObj instanceof EnemySprite );
-                    else
-                        enemiesLeft = true;
-                    spriteObj.update();
-                }
-                if ( !enemiesLeft && enemyCount == maxEnemyCount )
-                    currentGameState = GameState.END_OF_LEVEL;
+                if ( currentGameState == GameState.PLAYING )
+                    enemiesLeft = enemiesLeft || ( spriteObj instanceof AsteroidSprite || spriteObj instanceof EnemySprite );
+                else
+                    enemiesLeft = true;
+                spriteObj.update();
             }
+            if ( !enemiesLeft && enemyCount == maxEnemyCount )
+                currentGameState = GameState.END_OF_LEVEL;
         }
     }
 
@@ -237,28 +427,28 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                     /**
                      * Exit the application
                      */
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Quit, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Quit, this ) );
                     break;
 
                 case KeyEvent.VK_S: // start the game from the splash screen
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Start, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Start, this ) );
                     break;
 
                 case KeyEvent.VK_P: // pause and unpause the game from
                                     // playing/paused state
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Pause, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Pause, this ) );
                     break;
 
                 case KeyEvent.VK_R: // restart the game after a game over
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Start, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Start, this ) );
                     break;
 
                 case KeyEvent.VK_N: // move to next level
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.NextLevel, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.NextLevel, this ) );
                     break;
 
                 case KeyEvent.VK_H: // show help screen
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Help, this ) );
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Help, this ) );
                     break;
             }
         }
@@ -268,12 +458,9 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
          */
         if ( currentGameState != GameState.PAUSED )
         {
-            synchronized ( spriteList )
+            for ( Sprite spriteObj : spriteList )
             {
-                for ( Sprite spriteObj : spriteList )
-                {
-                    spriteObj.keyboardEvent( ke );
-                }
+                spriteObj.keyboardEvent( ke );
             }
         }
     }
@@ -286,12 +473,9 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
          */
         if ( currentGameState != GameState.PAUSED )
         {
-            synchronized ( spriteList )
+            for ( Sprite spriteObj : spriteList )
             {
-                for ( Sprite spriteObj : spriteList )
-                {
-                    spriteObj.mouseEvent( me );
-                }
+                spriteObj.mouseEvent( me );
             }
         }
     }
@@ -303,60 +487,58 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         switch ( ge.getType() )
         {
             case AddFirst:
-                synchronized ( spriteList )
-                {
-                    spriteList.addFirst( ( Sprite ) ge.getAttachment() );
-                }
+                spriteList.addFirst( ( Sprite ) ge.getAttachment() );
                 break;
 
             case AddLast:
-                synchronized ( spriteList )
-                {
-                    spriteList.addLast( ( Sprite ) ge.getAttachment() );
-                }
+                spriteList.addLast( ( Sprite ) ge.getAttachment() );
                 break;
 
             case Remove:
-                synchronized ( spriteList )
+                /**
+                 * A sprite already removed must not end the game or split
+                 * again
+                 */
+                Sprite sprite = ( Sprite ) ge.getAttachment();
+                if ( !spriteList.remove( sprite ) )
                 {
-                    Sprite sprite = ( Sprite ) ge.getAttachment();
-                    spriteList.remove( sprite );
-                    if ( sprite instanceof PlayerSprite )
-                    {
-                        GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.End, this ) );
-                    }
-                    if ( sprite instanceof AsteroidSprite )
+                    break;
+                }
+                if ( sprite instanceof PlayerSprite )
+                {
+                    GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.End, this ) );
+                }
+                if ( sprite instanceof AsteroidSprite )
+                {
+                    AsteroidSprite as = ( AsteroidSprite ) ge.getAttachment();
+                    Point pos = as.getPos();
+                    Point vel = as.getVel();
+                    switch ( as.getSize() )
                     {
-                        AsteroidSprite as = ( AsteroidSprite ) ge.getAttachment();
-                        Point pos = as.getPos();
-                        Point vel = as.getVel();
-                        switch ( as.getSize() )
-                        {
-                            case SMALL:
-                                break;
-                            case MEDIUM:
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 2 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 2 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 4 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 4 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 6 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 6 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
-                                break;
-                            case LARGE:
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 2 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 2 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 4 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 4 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
-                                spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 6 * Math.PI + 1 ) / 3 ),
-                                        vel.y * Math.sin( ( 6 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
-                                break;
-                        }
+                        case SMALL:
+                            break;
+                        case MEDIUM:
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 2 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 2 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 4 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 4 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 6 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 6 * Math.PI + 1 ) / 3 ), Size.SMALL ) );
+                            break;
+                        case LARGE:
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 2 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 2 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 4 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 4 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
+                            spriteList.add( new AsteroidSprite( pos.x, pos.y, vel.x * Math.cos( ( 6 * Math.PI + 1 ) / 3 ),
+                                    vel.y * Math.sin( ( 6 * Math.PI + 1 ) / 3 ), Size.MEDIUM ) );
+                            break;
                     }
                 }
                 break;
 
             case Score:
-                int score = ( ( Integer ) ge.getAttachment() ).intValue();
+                int score = ( int ) ge.getValue();
                 scoreSprite.add( score );
                 break;
 
@@ -375,11 +557,8 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                     currentGameState = GameState.SPLASH;
                     scoreSprite = new ScoreSprite();
                     playerSprite.reset();
-                    synchronized ( spriteList )
-                    {
-                        spriteList.clear();
-                        spriteList.add( splashSprite );
-                    }
+                    spriteList.clear();
+                    spriteList.add( splashSprite );
                 }
                 break;
 
@@ -397,32 +576,29 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                 break;
 
             case End:
+                /**
+                 * Nobody is watching a headless game, so it is done
+                 */
+                if ( GameDisplay.isHeadless() )
+                    GameEngine.stop();
                 GameDisplay.captureCursor( false );
                 currentGameState = GameState.GAME_OVER;
-                synchronized ( spriteList )
-                {
-                    spriteList.addFirst( gameOverSprite );
-                }
+                cancelEnemies();
+                spriteList.addFirst( gameOverSprite );
                 break;
 
             case Quit:
-                synchronized ( spriteList )
-                {
-                    spriteList.clear();
-                }
+                cancelEnemies();
+                spriteList.clear();
                 if ( backgroundMusic != null )
                     backgroundMusic.close();
                 GameEngine.stop();
                 break;
             case NextLevel:
-                nextTime = System.currentTimeMillis() + 500;
-                synchronized ( spriteList )
+                if ( currentGameState == GameState.END_OF_LEVEL )
                 {
-                    if ( currentGameState == GameState.END_OF_LEVEL )
-                    {
-                        spriteList.clear();
-                        setLevel( ++level );
-                    }
+                    spriteList.clear();
+                    setLevel( ++level );
                 }
                 break;
             case Help:
@@ -430,20 +606,14 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                 if ( currentGameState == GameState.SPLASH )
                 {
                     currentGameState = GameState.HELP;
-                    synchronized ( spriteList )
-                    {
-                        spriteList.remove( splashSprite );
-                        spriteList.addLast( helpSprite );
-                    }
+                    spriteList.remove( splashSprite );
+                    spriteList.addLast( helpSprite );
                 }
                 else if ( currentGameState == GameState.HELP )
                 {
                     currentGameState = GameState.SPLASH;
-                    synchronized ( spriteList )
-                    {
-                        spriteList.remove( helpSprite );
-                        spriteList.addLast( splashSprite );
-                    }
+                    spriteList.remove( helpSprite );
+                    spriteList.addLast( splashSprite );
                 }
             default:
                 break;
@@ -461,10 +631,49 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         return currentGameState;
     }
 
+    /**
+     * Stop releasing enemies
+     */
+    private void cancelEnemies()
+    {
+        if ( enemyTimer != null )
+        {
+            enemyTimer.cancel();
+            enemyTimer = null;
+        }
+    }
+
+    /**
+     * Release the enemies of the level, the first after the given delay in
+     * milliseconds and the rest every NextEnemyTime. No enemies are released
+     * while the game is paused.
+     * 
+     * @param delay
+     */
+    private void scheduleEnemies( long delay )
+    {
+        cancelEnemies();
+        enemyTimer = GameEngine.getTimerWheel().scheduleRepeating( GameEngine.millisToTicks( delay ),
+                GameEngine.millisToTicks( NextEnemyTime ), new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if ( currentGameState == GameState.PLAYING )
+                        {
+                            releaseEnemy();
+                        }
+                        if ( enemyCount >= maxEnemyCount )
+                        {
+                            cancelEnemies();
+                        }
+                    }
+                } );
+    }
+
     private void releaseEnemy()
     {
-        nextTime += NextEnemyTime;
-        double cos = Math.acos( Math.random() );
+        double cos = Math.acos( GameContext.current().getRandom().nextDouble() );
         double sin = Math.PI / 2 - cos;
         switch ( level )
         {
@@ -482,22 +691,22 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                 switch ( ( int ) enemyCount % 4 )
                 {
                     case 0:
-                        spriteList.add( new EnemySprite( playerSprite, 0, -100, 1 ) );
+                        spriteList.add( new EnemySprite( playerSprite, spriteIndex, 0, -100, 1 ) );
                         break;
                     case 1:
-                        spriteList.add( new EnemySprite( playerSprite, display.width, 0, 1 ) );
+                        spriteList.add( new EnemySprite( playerSprite, spriteIndex, display.width, 0, 1 ) );
                         break;
                     case 2:
-                        spriteList.add( new EnemySprite( playerSprite, 0, display.height, 1 ) );
+                        spriteList.add( new EnemySprite( playerSprite, spriteIndex, 0, display.height, 1 ) );
                         break;
                     case 3:
-                        spriteList.add( new EnemySprite( playerSprite, display.width, display.height, 1 ) );
+                        spriteList.add( new EnemySprite( playerSprite, spriteIndex, display.width, display.height, 1 ) );
                         break;
                 }
                 break;
             case 2:
                 if ( enemyCount % 5 == 0 )
-                    spriteList.add( new EnemySprite( playerSprite, display.width, display.height, 2 ) );
+                    spriteList.add( new EnemySprite( playerSprite, spriteIndex, display.width, display.height, 2 ) );
                 else
                     spriteList.add( new AsteroidSprite( 0, 0, 5 * Math.cos( cos ), 5 * Math.sin( sin ), Size.LARGE ) );
                 break;
@@ -505,25 +714,51 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
         enemyCount++;
     }
 
+    /**
+     * Remember where each sprite is before it is updated, so render can draw
+     * it between this position and the next
+     */
+    private void recordPositions()
+    {
+        IdentityHashMap< Sprite, Point > positions = sparePositions;
+        for ( Sprite spriteObj : spriteList )
+        {
+            Rectangle bounds = spriteObj.getBounds();
+            if ( bounds == null )
+            {
+                continue;
+            }
+            Point position = previousPositions.remove( spriteObj );
+            if ( position == null )
+            {
+                position = new Point();
+            }
+            position.setLocation( bounds.x, bounds.y );
+            positions.put( spriteObj, position );
+        }
+
+        previousPositions.clear();
+        sparePositions = previousPositions;
+        previousPositions = positions;
+    }
+
     private void setLevel( int inLevel )
     {
         try
         {
-            synchronized ( spriteList )
+            spriteList.clear();
+            cancelEnemies();
+            if ( inLevel == FINAL_LEVEL )
             {
-                spriteList.clear();
-                if ( inLevel == FINAL_LEVEL )
-                {
-                    spriteList.addLast( winSprite );
-                    currentGameState = GameState.GAME_OVER;
-                    return;
-                }
-                    
-                else
-                {
-                    spriteList.addFirst( playerSprite );
-                    spriteList.addFirst( scoreSprite );
-                }
+                spriteList.addLast( winSprite );
+                currentGameState = GameState.GAME_OVER;
+                return;
+            }
+                
+            else
+            {
+                spriteList.addFirst( playerSprite );
+                spriteList.addFirst( scoreSprite );
             }
             switch ( inLevel )
             {
@@ -538,10 +773,7 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
                     // http://opengameart.org/content/space-background-2
 
                     // set music
-                    if ( backgroundMusic != null )
-                        backgroundMusic.close();
-                    backgroundMusic = new AudioMidi( this, "sound/level1.mid" );
-                    backgroundMusic.loop( AudioMidi.LOOP_CONTINUOUSLY );
+                    playMusic( "sound/level1.mid" );
                     break;
                 case 1:
                     enemyCount = 0;
@@ -550,9 +782,7 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
 
                     background = ImageUtil.loadBufferedImage( this, "img/level1.png" );
 
-                    backgroundMusic.close();
-                    backgroundMusic = new AudioMidi( this, "sound/level2.mid" );
-                    backgroundMusic.loop( AudioMidi.LOOP_CONTINUOUSLY );
+                    playMusic( "sound/level2.mid" );
                     break;
                 case 2:
                     enemyCount = 0;
@@ -561,9 +791,7 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
 
                     background = ImageUtil.loadBufferedImage( this, "img/level2.png" );
 
-                    backgroundMusic.close();
-                    backgroundMusic = new AudioMidi( this, "sound/level3.mid" );
-                    backgroundMusic.loop( AudioMidi.LOOP_CONTINUOUSLY );
+                    playMusic( "sound/level3.mid" );
 
                     break;
                 case 3:
@@ -580,5 +808,32 @@ public class MissionToTitan implements Game, MouseEventListener, KeyboardEventLi
             e.printStackTrace();
         }
         currentGameState = GameState.PLAYING;
+
+        /**
+         * The first enemy of a new game comes right away, later levels give
+         * the player half a second
+         */
+        scheduleEnemies( ( inLevel == 0 ) ? 0 : 500 );
+    }
+
+    /**
+     * Replace the background music. There is no music on a headless display.
+     * 
+     * @param filename
+     * @throws InvalidMidiDataException
+     * @throws IOException
+     * @throws MidiUnavailableException
+     */
+    private void playMusic( String filename ) throws InvalidMidiDataException, IOException, MidiUnavailableException
+    {
+        if ( backgroundMusic != null )
+            backgroundMusic.close();
+        backgroundMusic = null;
+
+        if ( !GameDisplay.isHeadless() )
+        {
+            backgroundMusic = new AudioMidi( this, filename );
+            backgroundMusic.loop( AudioMidi.LOOP_CONTINUOUSLY );
+        }
     }
 }
\ No newline at end of file
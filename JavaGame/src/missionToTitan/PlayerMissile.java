@@ -10,6 +10,10 @@ import java.io.IOException;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import libs.CollisionFilter;
+import libs.Contact;
+import libs.ContactListener;
+import libs.ContactTest;
 import libs.AudioSample;
 import libs.GameDisplay;
 import libs.GameEngine;
@@ -17,6 +21,8 @@ import libs.GameEvent;
 import libs.GameEvent.GameEventType;
 import libs.GameEventDispatcher;
 import libs.Sprite;
+import libs.SweptBounds;
+import libs.SweptCollider;
 import libs.TileSheet;
 
 /**
@@ -25,7 +31,7 @@ import libs.TileSheet;
  * @author williamhooper
  * 
  */
-public class PlayerMissile implements Sprite
+public class PlayerMissile implements Sprite, CollisionFilter, ContactListener, ContactTest, SweptCollider
 {
 
     private double xPos;
@@ -36,20 +42,102 @@ public class PlayerMissile implements Sprite
     private double heigth;
     private double yVel;
     private double xVel;
-    private long updateTime;
+    private long spawnTick;
+    private long hitTick;
+    private long flightFrameTicks;
+    private long explosionFrameTicks;
     private int row, column;
     private Rectangle missileShape;
+    private Rectangle previousShape;
     private Rectangle display;
-    private static TileSheet playerMissileSprite;
-    private static TileSheet explosion;
-    private static AudioSample playerHit;
+    private AudioSample playerHit;
     private State state;
 
+    /**
+     * Nearest sprite the missile ran into during the collision pass, hit
+     * once all contacts of the tick are in
+     */
+    private Sprite target;
+    private double targetImpact;
+
+    /**
+     * Largest step in pixels when looking for the first pixel of an asteroid
+     * along the missile's move
+     */
+    private static final int IMPACT_STEP = 4;
+
     private enum State
     {
         MOVING, TARGET_HIT;
     }
 
+    /**
+     * Missile and explosion tile sheets, loaded once and shared. The holder
+     * class loads them the first time a missile is fired; class
+     * initialization makes that safe when several games fire at once.
+     */
+    private static final class TileSheets
+    {
+        private static TileSheet playerMissileSprite;
+        private static TileSheet explosion;
+
+        static
+        {
+            TileSheets ts = new TileSheets();
+            try
+            {
+                playerMissileSprite = new TileSheet( ts, "img/playerMissile.png", 64, 64 );
+                explosion = new TileSheet( ts, "img/explosion.png", 256, 256 );
+            }
+            catch ( IOException ioe )
+            {
+                GameEngine.stop();
+            }
+        }
+
+        /**
+         * Private constructor, an instance only locates the image files
+         */
+        private TileSheets( )
+        {}
+    }
+
+    /**
+     * Hit sound, loaded once and shared like the tile sheets. Only loaded
+     * when a game with a display fires, headless games have no sound.
+     */
+    private static final class Sounds
+    {
+        private static AudioSample playerHit;
+
+        static
+        {
+            Sounds sounds = new Sounds();
+            try
+            {
+                playerHit = new AudioSample( sounds, "sound/playerHit.wav" );
+            }
+            catch ( IOException ioe )
+            {
+                GameEngine.stop();
+            }
+            catch ( UnsupportedAudioFileException uafe )
+            {
+                GameEngine.stop();
+            }
+            catch ( LineUnavailableException lue )
+            {
+                GameEngine.stop();
+            }
+        }
+
+        /**
+         * Private constructor, an instance only locates the sound files
+         */
+        private Sounds( )
+        {}
+    }
+
     /**
      * Constructor
      * 
@@ -66,76 +154,59 @@ public class PlayerMissile implements Sprite
         column = 0;
         state = State.MOVING;
 
-        if ( playerMissileSprite == null )
+        if ( !GameDisplay.isHeadless() )
         {
-            loadBufferedImage( this );
-        }
-
-        if ( playerHit == null )
-        {
-            loadAudioSample( this );
+            playerHit = Sounds.playerHit;
         }
         display = GameDisplay.getBounds();
-        width = playerMissileSprite.getTileWidth();
-        heigth = playerMissileSprite.getTileHeight();
+        width = TileSheets.playerMissileSprite.getTileWidth();
+        heigth = TileSheets.playerMissileSprite.getTileHeight();
         missileShape = new Rectangle( ( int ) xPos, ( int ) yPos, ( int ) width, ( int ) heigth );
-        updateTime = System.currentTimeMillis();
+        previousShape = new Rectangle( missileShape );
+        spawnTick = GameEngine.getTickCount();
+        flightFrameTicks = GameEngine.millisToTicks( 1000 / 30 );
+        explosionFrameTicks = GameEngine.millisToTicks( 125 );
     }
 
     @Override
     public void checkCollision( Sprite obj )
     {
-        /**
-         * Check to see if we hit an enemy
-         */
+        if ( state == State.MOVING && missileShape.intersects( obj.getBounds() ) )
+        {
+            aim( obj, 1.0 );
+        }
+    }
+
+    @Override
+    public void contact( Contact contact )
+    {
         if ( state == State.MOVING )
-            if ( obj instanceof EnemySprite || obj instanceof AsteroidSprite )
-            {
-                if ( missileShape.intersects( obj.getBounds() ) )
-                {
-                    playerHit.play();
-
-                    /**
-                     * Dispatch an event to remove the enemy
-                     */
-                    if ( obj instanceof AsteroidSprite )
-                        GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, obj ) );
-                    else if ( obj instanceof EnemySprite )
-                        ( ( EnemySprite ) obj ).takeDamage( 50 );
-
-                    /**
-                     * Done with the player missile
-                     */
-                    row = 0;
-                    column = 0;
-                    state = State.TARGET_HIT;
-                    xPos = xPos + playerMissileSprite.getTileWidth() / 2 - explosion.getTileWidth() / 2;
-                    yPos = yPos + playerMissileSprite.getTileHeight() / 2 - explosion.getTileHeight() / 2;
-                    /**
-                     * Dispatch an event to update the score
-                     */
-                    GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Score, new Integer( 10 ) ) );
-                }
-            }
+        {
+            aim( contact.getOther( this ), contact.getTimeOfImpact() );
+        }
+    }
+
+    @Override
+    public boolean testContact( Sprite other, double timeOfImpact )
+    {
+        return state == State.MOVING && findImpact( other, timeOfImpact ) != SweptBounds.NO_IMPACT;
     }
 
     @Override
     public void draw( Graphics2D g )
     {
-        missileShape.x = ( int ) xPos;
-        missileShape.y = ( int ) yPos;
         if ( state == State.MOVING )
         {
             double angle = Math.atan2( yPos - lastY, xPos - lastX );
             AffineTransform transform = AffineTransform.getTranslateInstance( xPos, yPos );
             transform.concatenate( AffineTransform.getRotateInstance( angle - Math.PI / 2, ( missileShape.getWidth() / 2 ),
                     ( missileShape.getHeight() / 2 ) ) );
-            g.drawImage( playerMissileSprite.getTile( row, column ), transform, null );
+            g.drawImage( TileSheets.playerMissileSprite.getTile( row, column ), transform, null );
         }
         else if ( state == State.TARGET_HIT )
             try
             {
-                g.drawImage( explosion.getTile( row, column ), null, ( int ) xPos, ( int ) yPos );
+                g.drawImage( TileSheets.explosion.getTile( row, column ), null, ( int ) xPos, ( int ) yPos );
             }
             catch ( Exception e )
             {
@@ -146,43 +217,52 @@ public class PlayerMissile implements Sprite
     @Override
     public void update()
     {
+        /**
+         * A fast move can cross several sprites, only the first one along
+         * the move is hit
+         */
+        if ( target != null )
+        {
+            collide( target, targetImpact );
+            target = null;
+        }
+
         if ( yPos + heigth <= 0 || yPos >= display.height || xPos + width <= 0 || xPos >= display.width )
         {
             /**
              * The missile went off the screen so remove it
              */
 
-            GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, this ) );
+            GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, this ) );
         }
         if ( state == State.MOVING )
         {
+            previousShape.setLocation( missileShape.x, missileShape.y );
             lastY = yPos;
             yPos += yVel;
             lastX = xPos;
             xPos += xVel;
-            if ( updateTime < System.currentTimeMillis() )
-            {
-                updateTime += 1000 / 30;
-
-                column++;
-                if ( column == playerMissileSprite.getNumberColumns() )
-                {
-                    column = 0;
-                    row++;
-                }
-                row %= playerMissileSprite.getNumberRows();
-            }
+            missileShape.x = ( int ) xPos;
+            missileShape.y = ( int ) yPos;
+
+            /**
+             * Step through the flight animation 30 times a second of game time
+             */
+            long frame = ( GameEngine.getTickCount() - spawnTick ) / flightFrameTicks;
+            column = ( int ) ( frame % TileSheets.playerMissileSprite.getNumberColumns() );
+            row = ( int ) ( ( frame / TileSheets.playerMissileSprite.getNumberColumns() )
+                    % TileSheets.playerMissileSprite.getNumberRows() );
         }
-        else if ( state == State.TARGET_HIT && updateTime < System.currentTimeMillis() )
+        else if ( state == State.TARGET_HIT )
         {
-            updateTime += 125;
-            if ( ++column == explosion.getNumberColumns() )
-            {
-                column = 0;
-                row++;
-            }
-            if ( row == explosion.getNumberRows() )
-                GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, this ) );
+            /**
+             * Step through the explosion every 125 ms of game time, holding
+             * the last tile until the timer removes the missile
+             */
+            long frame = Math.min( ( GameEngine.getTickCount() - hitTick ) / explosionFrameTicks,
+                    TileSheets.explosion.getNumberColumns() * TileSheets.explosion.getNumberRows() - 1 );
+            column = ( int ) ( frame % TileSheets.explosion.getNumberColumns() );
+            row = ( int ) ( frame / TileSheets.explosion.getNumberColumns() );
         }
     }
 
@@ -207,7 +287,25 @@ public class PlayerMissile implements Sprite
     @Override
     public Rectangle getBounds()
     {
-        return missileShape.getBounds();
+        return missileShape;
+    }
+
+    @Override
+    public Rectangle getPreviousBounds()
+    {
+        return previousShape;
+    }
+
+    @Override
+    public int getCollisionCategory()
+    {
+        return CollisionCategory.PLAYER_MISSILE;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return CollisionCategory.ENEMY | CollisionCategory.ASTEROID;
     }
 
     @Override
@@ -224,36 +322,101 @@ public class PlayerMissile implements Sprite
 
     }
 
-    private static void loadBufferedImage( PlayerMissile pm )
+    /**
+     * Keep a sprite the missile ran into as its target if it was hit earlier
+     * along the move than the target so far. Ties keep the first contact.
+     * 
+     * @param obj
+     * @param timeOfImpact
+     */
+    private void aim( Sprite obj, double timeOfImpact )
     {
-        try
+        double impact = findImpact( obj, timeOfImpact );
+        if ( impact != SweptBounds.NO_IMPACT && ( target == null || impact < targetImpact ) )
         {
-            playerMissileSprite = new TileSheet( pm, "img/playerMissile.png", 64, 64 );
-            explosion = new TileSheet( pm, "img/explosion.png", 256, 256 );
-        }
-        catch ( IOException ioe )
-        {
-            GameEngine.stop();
+            target = obj;
+            targetImpact = impact;
         }
     }
 
-    private static void loadAudioSample( PlayerMissile pm )
+    /**
+     * Hit an enemy or asteroid. The collision mask only lets enemies and
+     * asteroids through. The missile explodes where it hit during its last
+     * move.
+     * 
+     * @param obj
+     * @param impact
+     *            time along the move at which the missile hit
+     */
+    private void collide( Sprite obj, double impact )
     {
-        try
-        {
-            playerHit = new AudioSample( pm, "sound/playerHit.wav" );
-        }
-        catch ( IOException ioe )
-        {
-            GameEngine.stop();
-        }
-        catch ( UnsupportedAudioFileException uafe )
+        xPos = previousShape.x + Math.round( ( missileShape.x - previousShape.x ) * impact );
+        yPos = previousShape.y + Math.round( ( missileShape.y - previousShape.y ) * impact );
+
+        if ( playerHit != null )
+            playerHit.play();
+
+        /**
+         * Dispatch an event to remove the enemy
+         */
+        if ( obj instanceof AsteroidSprite )
+            GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, obj ) );
+        else if ( obj instanceof EnemySprite )
+            ( ( EnemySprite ) obj ).takeDamage( 50 );
+
+        /**
+         * Done with the player missile. Remove it once the
+         * explosion has played.
+         */
+        row = 0;
+        column = 0;
+        state = State.TARGET_HIT;
+        hitTick = GameEngine.getTickCount();
+        GameEngine.getTimerWheel().schedule(
+                explosionFrameTicks * TileSheets.explosion.getNumberColumns() * TileSheets.explosion.getNumberRows(),
+                GameEvent.obtain( this, GameEventType.Remove, this ) );
+        xPos = xPos + TileSheets.playerMissileSprite.getTileWidth() / 2 - TileSheets.explosion.getTileWidth() / 2;
+        yPos = yPos + TileSheets.playerMissileSprite.getTileHeight() / 2 - TileSheets.explosion.getTileHeight() / 2;
+        /**
+         * Dispatch an event to update the score
+         */
+        GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Score, 10 ) );
+    }
+
+    /**
+     * Return the time along its last move at which the missile first hit the
+     * sprite, from the time of impact of the bounding boxes on, or
+     * SweptBounds.NO_IMPACT if it missed. Asteroids only count where they are
+     * visible, so the move is stepped a few pixels at a time until the
+     * asteroid's mask is hit. Only reads the sprites, so it can be used by the
+     * contact test.
+     * 
+     * @param obj
+     * @param timeOfImpact
+     * @return double
+     */
+    private double findImpact( Sprite obj, double timeOfImpact )
+    {
+        if ( !( obj instanceof AsteroidSprite ) )
         {
-            GameEngine.stop();
+            return timeOfImpact;
         }
-        catch ( LineUnavailableException lue )
+
+        AsteroidSprite asteroid = ( AsteroidSprite ) obj;
+        int deltaX = missileShape.x - previousShape.x;
+        int deltaY = missileShape.y - previousShape.y;
+        int steps = Math.max( 1, ( int ) Math.ceil( Math.max( Math.abs( deltaX ), Math.abs( deltaY ) )
+                * ( 1.0 - timeOfImpact ) / IMPACT_STEP ) );
+
+        for ( int step = 0; step <= steps; step++ )
         {
-            GameEngine.stop();
+            double time = timeOfImpact + ( 1.0 - timeOfImpact ) * step / steps;
+            if ( asteroid.hits( previousShape.x + ( int ) Math.round( deltaX * time ),
+                    previousShape.y + ( int ) Math.round( deltaY * time ), missileShape.width, missileShape.height ) )
+            {
+                return time;
+            }
         }
+        return SweptBounds.NO_IMPACT;
     }
 }
@@ -14,6 +14,10 @@ import java.io.IOException;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import libs.CollisionFilter;
+import libs.Contact;
+import libs.ContactListener;
+import libs.ContactTest;
 import libs.AudioSample;
 import libs.AudioSample.AudioSampleState;
 import libs.GameDisplay;
@@ -30,7 +34,7 @@ import libs.Sprite;
  * @author williamhooper
  * 
  */
-public class PlayerSprite implements Sprite
+public class PlayerSprite implements Sprite, CollisionFilter, ContactListener, ContactTest
 {
     private double xPos;
     private double yPos;
@@ -47,7 +51,24 @@ public class PlayerSprite implements Sprite
     private int shield, maxShield;
     private Rectangle playerShape;
     private Rectangle displayBounds;
-    private long missileTime;
+    private boolean missileReady;
+
+    /**
+     * Time in milliseconds before another missile can be fired
+     */
+    private static final long MISSILE_RELOAD_TIME = 250;
+
+    /**
+     * Timer action that makes the next missile ready
+     */
+    private final Runnable reloadAction = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            missileReady = true;
+        }
+    };
 
     private static BufferedImage playerBufferedImage;
     private static AudioSample playerMissileFire;
@@ -72,7 +93,7 @@ public class PlayerSprite implements Sprite
 
             }
         }
-        if ( playerMissileFire == null )
+        if ( playerMissileFire == null && !GameDisplay.isHeadless() )
         {
             loadAudioSample( this );
         }
@@ -97,7 +118,7 @@ public class PlayerSprite implements Sprite
 
         playerShape = new Rectangle( ( int ) xPos, ( int ) yPos, ( int ) width, ( int ) heigth );
 
-        missileTime = System.currentTimeMillis() + 250;
+        reloadMissile();
     }
 
     @Override
@@ -105,31 +126,21 @@ public class PlayerSprite implements Sprite
     {
         if ( playerShape.intersects( obj.getBounds() ) )
         {
-            if ( obj instanceof EnemySprite )
-            {
-                /**
-                 * Dispatch an event to remove the enemy
-                 */
-                GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, obj ) );
-                takeDamage( 50 );
-            }
-            else if ( obj instanceof AsteroidSprite )
-            {
-                switch ( ( ( AsteroidSprite ) obj ).getSize() )
-                {
-                    case LARGE:
-                        takeDamage( 30 );
-                        break;
-                    case MEDIUM:
-                        takeDamage( 20 );
-                        break;
-                    case SMALL:
-                        takeDamage( 10 );
-                        break;
-                }
-            }
+            collide( obj );
         }
+    }
 
+    @Override
+    public void contact( Contact contact )
+    {
+        collide( contact.getOther( this ) );
+    }
+
+    @Override
+    public boolean testContact( Sprite other, double timeOfImpact )
+    {
+        return other instanceof EnemySprite
+                || ( other instanceof AsteroidSprite && ( ( AsteroidSprite ) other ).hits( playerShape ) );
     }
 
     @Override
@@ -137,8 +148,6 @@ public class PlayerSprite implements Sprite
     {
         Font f = new Font( "Times New Roman", Font.BOLD, 24 );
 
-        playerShape.x = ( int ) xPos;
-        playerShape.y = ( int ) yPos;
         g.setFont( f );
         g.setColor( Color.green );
         g.drawString( "Fuel Level:", displayBounds.width - 300, 20 );
@@ -181,12 +190,27 @@ public class PlayerSprite implements Sprite
 
         else if ( yPos > displayBounds.height + playerShape.height )
             yPos -= displayBounds.height + playerShape.height;
+
+        playerShape.x = ( int ) xPos;
+        playerShape.y = ( int ) yPos;
     }
 
     @Override
     public Rectangle getBounds()
     {
-        return playerShape.getBounds();
+        return playerShape;
+    }
+
+    @Override
+    public int getCollisionCategory()
+    {
+        return CollisionCategory.PLAYER;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return CollisionCategory.ENEMY | CollisionCategory.ASTEROID;
     }
 
     @Override
@@ -209,14 +233,14 @@ public class PlayerSprite implements Sprite
                     break;
 
                 case KeyEvent.VK_SPACE:
-                    if ( missileTime < System.currentTimeMillis() )
+                    if ( missileReady )
                     {
                         PlayerMissile missile = new PlayerMissile( xPos + playerShape.width / 2, yPos + playerShape.height / 2,
                                 xVelocity + ( 5 * Math.sin( heading ) ), yVelocity - ( 5 * Math.cos( heading ) ) );
-                        GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.AddLast, missile ) );
-                        if ( playerMissileFire.getState() == AudioSampleState.DONE )
+                        GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.AddLast, missile ) );
+                        if ( playerMissileFire != null && playerMissileFire.getState() == AudioSampleState.DONE )
                             playerMissileFire.play();
-                        missileTime = System.currentTimeMillis() + 250;
+                        reloadMissile();
 
                     }
                     break;
@@ -266,17 +290,60 @@ public class PlayerSprite implements Sprite
         fuel -= 1;
     }
 
+    /**
+     * Take damage from an enemy or asteroid the player ran into. Asteroids
+     * only count where they are visible.
+     * 
+     * @param obj
+     */
+    private void collide( Sprite obj )
+    {
+        if ( obj instanceof EnemySprite )
+        {
+            /**
+             * Dispatch an event to remove the enemy
+             */
+            GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, obj ) );
+            takeDamage( 50 );
+        }
+        else if ( obj instanceof AsteroidSprite && ( ( AsteroidSprite ) obj ).hits( playerShape ) )
+        {
+            switch ( ( ( AsteroidSprite ) obj ).getSize() )
+            {
+                case LARGE:
+                    takeDamage( 30 );
+                    break;
+                case MEDIUM:
+                    takeDamage( 20 );
+                    break;
+                case SMALL:
+                    takeDamage( 10 );
+                    break;
+            }
+        }
+    }
+
     private void takeDamage( int damage )
     {
-        playerHit.play();
+        if ( playerHit != null )
+            playerHit.play();
         shield -= damage;
         if ( shield < 0 ) // if shield is 0, destroy sprite
         {
             shield = 0;
-            GameEventDispatcher.dispatchEvent( new GameEvent( this, GameEventType.Remove, this ) );
+            GameEventDispatcher.dispatchEvent( GameEvent.obtain( this, GameEventType.Remove, this ) );
         }
     }
 
+    /**
+     * Make the missile ready again once the reload time has passed
+     */
+    private void reloadMissile()
+    {
+        missileReady = false;
+        GameEngine.getTimerWheel().schedule( GameEngine.millisToTicks( MISSILE_RELOAD_TIME ), reloadAction );
+    }
+
     public void reset()
     {
         xVelocity = 0;
@@ -7,6 +7,7 @@ import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 
+import libs.CollisionFilter;
 import libs.GameDisplay;
 import libs.Sprite;
 
@@ -17,7 +18,7 @@ import libs.Sprite;
  * @author williamhooper
  * 
  */
-public class ScoreSprite implements Sprite
+public class ScoreSprite implements Sprite, CollisionFilter
 {
     private int score;
     private Rectangle displayBounds;
@@ -70,6 +71,18 @@ public class ScoreSprite implements Sprite
         return displayBounds;
     }
 
+    @Override
+    public int getCollisionCategory()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return 0;
+    }
+
     @Override
     public void keyboardEvent( KeyEvent ke )
     {
@@ -7,11 +7,12 @@ import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
+import libs.CollisionFilter;
 import libs.GameEngine;
 import libs.ImageUtil;
 import libs.Sprite;
 
-public class SplashSprite implements Sprite
+public class SplashSprite implements Sprite, CollisionFilter
 {
     private BufferedImage splashImage;
     
@@ -48,6 +49,18 @@ public class SplashSprite implements Sprite
         return null;
     }
 
+    @Override
+    public int getCollisionCategory()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getCollisionMask()
+    {
+        return 0;
+    }
+
     @Override
     public void update()
     {